@@ -52,6 +52,15 @@ public class DemoListFragment extends Fragment implements AdapterView.OnItemClic
         demos.add(newDemoEntry(getString(R.string.demo_progress_custom),
                 "com.marvinlabs.widget.progresspanel.demo.ProgressPanelDemoFragment",
                 ProgressPanelDemoFragment.getArguments(ProgressPanelDemoFragment.ProgressPanelType.CUSTOM)));
+        demos.add(newDemoEntry(getString(R.string.demo_stress_grid),
+                "com.marvinlabs.widget.progresspanel.demo.StressDemoFragment",
+                StressDemoFragment.getArguments(StressDemoFragment.StressLayout.GRID, 200, 100, false)));
+        demos.add(newDemoEntry(getString(R.string.demo_stress_list),
+                "com.marvinlabs.widget.progresspanel.demo.StressDemoFragment",
+                StressDemoFragment.getArguments(StressDemoFragment.StressLayout.LIST, 500, 100, false)));
+        demos.add(newDemoEntry(getString(R.string.demo_stress_grid_lightweight),
+                "com.marvinlabs.widget.progresspanel.demo.StressDemoFragment",
+                StressDemoFragment.getArguments(StressDemoFragment.StressLayout.GRID, 200, 100, true)));
     }
 
     @Override
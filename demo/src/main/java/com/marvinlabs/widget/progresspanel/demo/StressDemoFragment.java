@@ -0,0 +1,382 @@
+package com.marvinlabs.widget.progresspanel.demo;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.support.v4.app.Fragment;
+import android.view.Choreographer;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
+import android.view.WindowManager;
+import android.widget.AbsListView;
+import android.widget.BaseAdapter;
+import android.widget.Button;
+import android.widget.EditText;
+import android.widget.GridView;
+import android.widget.ListView;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+import com.marvinlabs.widget.progresspanel.ProgressPanel;
+
+/**
+ * Puts a lot of progress panels on screen, in a grid or in list rows, and toggles their states continuously with
+ * random load durations. The number of panels and the tick interval can be changed while running. The frame times,
+ * the time spent in each tick, the number of layout passes and the heap usage are recorded and saved to a report file
+ * in the application files directory.
+ *
+ * @author Vincent Mimoun-Prat @ MarvinLabs
+ */
+public class StressDemoFragment extends Fragment implements View.OnClickListener,
+        ViewTreeObserver.OnGlobalLayoutListener {
+
+    private static final String ARG_LAYOUT = "Layout";
+    private static final String ARG_PANEL_COUNT = "PanelCount";
+    private static final String ARG_TICK_INTERVAL = "TickInterval";
+    private static final String ARG_LIGHTWEIGHT = "Lightweight";
+    private static final long HEAP_SAMPLE_INTERVAL = 1000;
+
+    private StressLayout layout;
+    private int panelCount;
+    private long tickInterval;
+    private boolean lightweight;
+    private StressScenario scenario;
+    private StressStats stats;
+    private int[] changedPanels;
+    private long startTime;
+    private boolean running;
+    private AbsListView listView;
+    private PanelAdapter adapter;
+    private EditText panelCountEdit;
+    private EditText tickIntervalEdit;
+    private FrameStatsCallback frameStatsCallback;
+    private final Handler handler = new Handler();
+
+    private final Runnable tickRunnable = new Runnable() {
+        @Override
+        public void run() {
+            long tickStart = System.nanoTime();
+            int count = scenario.tick(SystemClock.uptimeMillis(), changedPanels);
+            for (int i = 0; i < count; ++i) {
+                updateVisiblePanel(changedPanels[i]);
+            }
+            stats.recordTick(System.nanoTime() - tickStart);
+            stats.recordStateChanges(count);
+            handler.postDelayed(this, tickInterval);
+        }
+    };
+
+    private final Runnable heapRunnable = new Runnable() {
+        @Override
+        public void run() {
+            Runtime runtime = Runtime.getRuntime();
+            stats.recordHeapUsage(runtime.totalMemory() - runtime.freeMemory());
+            handler.postDelayed(this, HEAP_SAMPLE_INTERVAL);
+        }
+    };
+
+    public static StressDemoFragment newInstance(StressLayout layout, int panelCount, long tickInterval,
+                                                 boolean lightweight) {
+        StressDemoFragment f = new StressDemoFragment();
+        f.setArguments(getArguments(layout, panelCount, tickInterval, lightweight));
+        return f;
+    }
+
+    /**
+     * @param layout       How the panels are laid out
+     * @param panelCount   The number of panels
+     * @param tickInterval The interval between two state toggling passes, in milliseconds
+     * @param lightweight  Whether the panels use the lightweight rendering mode
+     */
+    public static Bundle getArguments(StressLayout layout, int panelCount, long tickInterval, boolean lightweight) {
+        Bundle args = new Bundle(4);
+        args.putInt(ARG_LAYOUT, layout.ordinal());
+        args.putInt(ARG_PANEL_COUNT, panelCount);
+        args.putLong(ARG_TICK_INTERVAL, tickInterval);
+        args.putBoolean(ARG_LIGHTWEIGHT, lightweight);
+        return args;
+    }
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        // The settings changed while running take precedence over the ones of the demo entry
+        Bundle settings = savedInstanceState != null ? savedInstanceState : getArguments();
+        layout = StressLayout.values()[getArguments().getInt(ARG_LAYOUT)];
+        panelCount = settings.getInt(ARG_PANEL_COUNT);
+        tickInterval = settings.getLong(ARG_TICK_INTERVAL);
+        lightweight = getArguments().getBoolean(ARG_LIGHTWEIGHT);
+
+        createScenario();
+    }
+
+    @Override
+    public void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putInt(ARG_PANEL_COUNT, panelCount);
+        outState.putLong(ARG_TICK_INTERVAL, tickInterval);
+    }
+
+    @Override
+    public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
+        View root = inflater.inflate(R.layout.fragment_stress_demo, null, false);
+
+        // AbsListView.setAdapter only exists starting with Honeycomb, set it on the concrete class
+        adapter = new PanelAdapter();
+        switch (layout) {
+            case GRID:
+                GridView gridView = new GridView(getActivity());
+                gridView.setColumnWidth(getResources().getDimensionPixelSize(R.dimen.stress_panel_size));
+                gridView.setNumColumns(GridView.AUTO_FIT);
+                gridView.setAdapter(adapter);
+                listView = gridView;
+                break;
+            case LIST:
+                ListView rowsView = new ListView(getActivity());
+                rowsView.setAdapter(adapter);
+                listView = rowsView;
+                break;
+            default:
+                throw new IllegalArgumentException("Stress layout must be specified");
+        }
+        ((ViewGroup) root.findViewById(R.id.stress_container)).addView(listView);
+
+        panelCountEdit = (EditText) root.findViewById(R.id.stress_panel_count);
+        panelCountEdit.setText(String.valueOf(panelCount));
+        tickIntervalEdit = (EditText) root.findViewById(R.id.stress_tick_interval);
+        tickIntervalEdit.setText(String.valueOf(tickInterval));
+
+        Button applyButton = (Button) root.findViewById(R.id.btn_apply_settings);
+        applyButton.setOnClickListener(this);
+
+        Button saveButton = (Button) root.findViewById(R.id.btn_save_report);
+        saveButton.setOnClickListener(this);
+
+        return root;
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        start();
+    }
+
+    @Override
+    public void onPause() {
+        stop();
+        saveReport();
+        super.onPause();
+    }
+
+    @Override
+    public void onClick(View view) {
+        if (view.getId() == R.id.btn_save_report) {
+            stop();
+            saveReport();
+            start();
+        } else if (view.getId() == R.id.btn_apply_settings) {
+            applySettings();
+        }
+    }
+
+    @Override
+    public void onGlobalLayout() {
+        stats.recordLayoutPass();
+    }
+
+    private void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+
+        stats = new StressStats(getFrameBudget());
+        startTime = SystemClock.uptimeMillis();
+
+        listView.getViewTreeObserver().addOnGlobalLayoutListener(this);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            if (frameStatsCallback == null) {
+                frameStatsCallback = new FrameStatsCallback();
+            }
+            frameStatsCallback.start();
+        }
+        handler.post(tickRunnable);
+        handler.post(heapRunnable);
+    }
+
+    @SuppressWarnings("deprecation")
+    private void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+
+        handler.removeCallbacks(tickRunnable);
+        handler.removeCallbacks(heapRunnable);
+        if (frameStatsCallback != null) {
+            frameStatsCallback.stop();
+        }
+        listView.getViewTreeObserver().removeGlobalOnLayoutListener(this);
+    }
+
+    private void createScenario() {
+        scenario = StressScenario.newDefault(panelCount, System.currentTimeMillis());
+        changedPanels = new int[panelCount];
+    }
+
+    /**
+     * Restart the run with the panel count and tick interval typed by the user. The statistics of the previous
+     * settings are saved first.
+     */
+    private void applySettings() {
+        int newPanelCount;
+        long newTickInterval;
+        try {
+            newPanelCount = Integer.parseInt(panelCountEdit.getText().toString().trim());
+            newTickInterval = Long.parseLong(tickIntervalEdit.getText().toString().trim());
+        } catch (NumberFormatException e) {
+            newPanelCount = 0;
+            newTickInterval = 0;
+        }
+        if (newPanelCount <= 0 || newTickInterval <= 0) {
+            Toast.makeText(getActivity(), R.string.stress_invalid_settings, Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        stop();
+        saveReport();
+
+        panelCount = newPanelCount;
+        tickInterval = newTickInterval;
+        createScenario();
+        adapter.notifyDataSetChanged();
+
+        start();
+    }
+
+    /**
+     * Write the statistics collected since the last start to a new file
+     */
+    private void saveReport() {
+        long duration = SystemClock.uptimeMillis() - startTime;
+        String title = "panels=" + panelCount + " layout=" + layout.name().toLowerCase(Locale.US) + " lightweight="
+                + lightweight + " tick_ms=" + tickInterval + " sdk=" + Build.VERSION.SDK_INT + " device="
+                + Build.MODEL;
+
+        File file = new File(getActivity().getFilesDir(), "stress-report-" + System.currentTimeMillis() + ".txt");
+        Writer out = null;
+        try {
+            out = new FileWriter(file);
+            stats.writeReport(out, title, duration);
+            Toast.makeText(getActivity(), getString(R.string.stress_report_saved, file.getAbsolutePath()),
+                    Toast.LENGTH_LONG).show();
+        } catch (IOException e) {
+            Toast.makeText(getActivity(), R.string.stress_report_failed, Toast.LENGTH_LONG).show();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Apply the new state of a panel if it is currently on screen. The other ones get their state when bound.
+     */
+    private void updateVisiblePanel(int position) {
+        View child = listView.getChildAt(position - listView.getFirstVisiblePosition());
+        if (child instanceof ProgressPanel) {
+            ((ProgressPanel) child).setContentShown(!scenario.isLoading(position));
+        }
+    }
+
+    private long getFrameBudget() {
+        WindowManager wm = (WindowManager) getActivity().getSystemService(Context.WINDOW_SERVICE);
+        float refreshRate = wm.getDefaultDisplay().getRefreshRate();
+        if (refreshRate <= 0) {
+            refreshRate = 60;
+        }
+        return (long) (1000000000L / refreshRate);
+    }
+
+    public static enum StressLayout {
+        GRID, LIST
+    }
+
+    /**
+     * Binds the panels to the state of the scenario
+     */
+    private class PanelAdapter extends BaseAdapter {
+
+        @Override
+        public int getCount() {
+            return panelCount;
+        }
+
+        @Override
+        public Object getItem(int position) {
+            return position;
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return position;
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            ProgressPanel panel = (ProgressPanel) convertView;
+            if (panel == null) {
+                panel = (ProgressPanel) LayoutInflater.from(getActivity()).inflate(
+                        lightweight ? R.layout.item_stress_panel_lightweight : R.layout.item_stress_panel, parent,
+                        false);
+            }
+
+            ((TextView) panel.getContentView()).setText("#" + position);
+            panel.setContentShownNoAnimation(!scenario.isLoading(position));
+            return panel;
+        }
+    }
+
+    /**
+     * Records the frame times using vsync callbacks, available starting with Jelly Bean
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private class FrameStatsCallback implements Choreographer.FrameCallback {
+
+        private boolean started;
+
+        void start() {
+            started = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        void stop() {
+            started = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (!started) {
+                return;
+            }
+            stats.recordFrame(frameTimeNanos);
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.marvinlabs.widget.progresspanel.demo;
+
+import java.util.Random;
+
+/**
+ * Drives the states of the panels of the stress demo: at each tick, the panels whose load is over go back to their
+ * content and a few other panels start a new load with a random duration.
+ *
+ * @author Vincent Mimoun-Prat @ MarvinLabs
+ */
+public class StressScenario {
+
+    private static final long DEFAULT_MIN_LOAD_DURATION = 200;
+    private static final long DEFAULT_MAX_LOAD_DURATION = 3000;
+    private static final int LOADS_PER_TICK_DIVIDER = 20;
+
+    private final Random random;
+    private final boolean[] loading;
+    private final long[] loadEndTimes;
+    private final int loadsPerTick;
+    private final long minLoadDuration;
+    private final long maxLoadDuration;
+    private long startedLoads;
+
+    /**
+     * @param panelCount      The number of panels
+     * @param loadsPerTick    The number of loads started at each tick
+     * @param minLoadDuration The minimum duration of a load in milliseconds
+     * @param maxLoadDuration The maximum duration of a load in milliseconds
+     * @param seed            The seed of the random generator, the same seed replays the same scenario
+     */
+    public StressScenario(int panelCount, int loadsPerTick, long minLoadDuration, long maxLoadDuration, long seed) {
+        if (panelCount <= 0) {
+            throw new IllegalArgumentException("Panel count must be positive");
+        }
+        if (minLoadDuration < 0 || maxLoadDuration < minLoadDuration) {
+            throw new IllegalArgumentException("Invalid load duration range");
+        }
+
+        this.random = new Random(seed);
+        this.loading = new boolean[panelCount];
+        this.loadEndTimes = new long[panelCount];
+        this.loadsPerTick = Math.min(loadsPerTick, panelCount);
+        this.minLoadDuration = minLoadDuration;
+        this.maxLoadDuration = maxLoadDuration;
+    }
+
+    /**
+     * Create the scenario used by the stress demo: loads last between 200ms and 3s, and one panel out of 20 starts a
+     * load at each tick.
+     *
+     * @param panelCount The number of panels
+     * @param seed       The seed of the random generator
+     */
+    public static StressScenario newDefault(int panelCount, long seed) {
+        return new StressScenario(panelCount, Math.max(1, panelCount / LOADS_PER_TICK_DIVIDER),
+                DEFAULT_MIN_LOAD_DURATION, DEFAULT_MAX_LOAD_DURATION, seed);
+    }
+
+    public int getPanelCount() {
+        return loading.length;
+    }
+
+    public boolean isLoading(int index) {
+        return loading[index];
+    }
+
+    public long getStartedLoads() {
+        return startedLoads;
+    }
+
+    /**
+     * Advance the scenario.
+     *
+     * @param now     The current time in milliseconds
+     * @param changed Filled with the indices of the panels whose state changed. Must hold at least {@link
+     *                #getPanelCount()} elements.
+     * @return the number of indices written to changed
+     */
+    public int tick(long now, int[] changed) {
+        int count = 0;
+        for (int i = 0; i < loading.length; ++i) {
+            if (loading[i] && now >= loadEndTimes[i]) {
+                loading[i] = false;
+                changed[count++] = i;
+            }
+        }
+
+        for (int n = 0; n < loadsPerTick; ++n) {
+            int index = random.nextInt(loading.length);
+            if (loading[index]) {
+                continue;
+            }
+
+            loading[index] = true;
+            loadEndTimes[index] = now + minLoadDuration
+                    + (long) (random.nextDouble() * (maxLoadDuration - minLoadDuration));
+            ++startedLoads;
+
+            // A panel which just finished its load may have been picked again, it is already listed
+            if (!contains(changed, count, index)) {
+                changed[count++] = index;
+            }
+        }
+        return count;
+    }
+
+    private static boolean contains(int[] values, int count, int value) {
+        for (int i = 0; i < count; ++i) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,144 @@
+package com.marvinlabs.widget.progresspanel.demo;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Collects the frame times, tick processing times, layout passes and heap usage measured during a stress demo run and
+ * writes them as a text report. Measures which are not available (frames before Jelly Bean) are left out of the
+ * report.
+ *
+ * @author Vincent Mimoun-Prat @ MarvinLabs
+ */
+public class StressStats {
+
+    private static final int MAX_FRAMES = 1 << 16;
+    private static final int MAX_TICKS = 1 << 16;
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    private final long frameBudgetNanos;
+    private final long[] frameIntervals = new long[MAX_FRAMES];
+    private int frameCount;
+    private long lastFrameTime;
+    private final long[] tickTimes = new long[MAX_TICKS];
+    private int tickCount;
+    private long layoutPasses;
+    private long stateChanges;
+    private long heapSamples;
+    private long heapTotal;
+    private long heapMin = Long.MAX_VALUE;
+    private long heapMax;
+
+    /**
+     * @param frameBudgetNanos The duration of a frame at the display refresh rate, in nanoseconds
+     */
+    public StressStats(long frameBudgetNanos) {
+        this.frameBudgetNanos = frameBudgetNanos;
+    }
+
+    public void recordFrame(long frameTimeNanos) {
+        if (lastFrameTime != 0 && frameCount < MAX_FRAMES) {
+            frameIntervals[frameCount++] = frameTimeNanos - lastFrameTime;
+        }
+        lastFrameTime = frameTimeNanos;
+    }
+
+    /**
+     * @param processingNanos The time spent computing the new states and applying them to the panels during a tick
+     */
+    public void recordTick(long processingNanos) {
+        if (tickCount < MAX_TICKS) {
+            tickTimes[tickCount++] = processingNanos;
+        }
+    }
+
+    public void recordLayoutPass() {
+        ++layoutPasses;
+    }
+
+    public void recordStateChanges(int count) {
+        stateChanges += count;
+    }
+
+    public void recordHeapUsage(long usedBytes) {
+        ++heapSamples;
+        heapTotal += usedBytes;
+        heapMin = Math.min(heapMin, usedBytes);
+        heapMax = Math.max(heapMax, usedBytes);
+    }
+
+    /**
+     * Write the report.
+     *
+     * @param out        The writer to write to. It is not closed.
+     * @param title      A line describing the run (panel count, layout, ...)
+     * @param durationMs The duration of the run in milliseconds
+     */
+    public void writeReport(Writer out, String title, long durationMs) throws IOException {
+        out.write(title + "\n");
+        out.write("duration_ms=" + durationMs + "\n");
+        out.write("state_changes=" + stateChanges + "\n");
+
+        if (tickCount > 0) {
+            out.write("ticks=" + tickCount + "\n");
+            writeDistribution(out, "tick", sortedCopy(tickTimes, tickCount));
+        }
+
+        if (frameCount > 0) {
+            long[] sorted = sortedCopy(frameIntervals, frameCount);
+            int janky = 0;
+            for (long interval : sorted) {
+                if (interval > frameBudgetNanos * 3 / 2) {
+                    ++janky;
+                }
+            }
+            out.write("frames=" + frameCount + "\n");
+            writeDistribution(out, "frame", sorted);
+            out.write("janky_frames=" + janky + "\n");
+        }
+
+        if (layoutPasses > 0) {
+            out.write("layout_passes=" + layoutPasses + "\n");
+            if (durationMs > 0) {
+                out.write("layout_passes_per_s=" + (layoutPasses * 1000 / durationMs) + "\n");
+            }
+        }
+
+        if (heapSamples > 0) {
+            out.write("heap_min_kb=" + (heapMin / 1024) + "\n");
+            out.write("heap_mean_kb=" + (heapTotal / heapSamples / 1024) + "\n");
+            out.write("heap_max_kb=" + (heapMax / 1024) + "\n");
+        }
+        out.flush();
+    }
+
+    private static long[] sortedCopy(long[] values, int count) {
+        long[] sorted = new long[count];
+        System.arraycopy(values, 0, sorted, 0, count);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private static void writeDistribution(Writer out, String name, long[] sorted) throws IOException {
+        long total = 0;
+        for (long value : sorted) {
+            total += value;
+        }
+        out.write(name + "_mean_ms=" + formatMillis(total / sorted.length) + "\n");
+        out.write(name + "_p50_ms=" + formatMillis(percentile(sorted, 50)) + "\n");
+        out.write(name + "_p90_ms=" + formatMillis(percentile(sorted, 90)) + "\n");
+        out.write(name + "_p99_ms=" + formatMillis(percentile(sorted, 99)) + "\n");
+        out.write(name + "_max_ms=" + formatMillis(sorted[sorted.length - 1]) + "\n");
+    }
+
+    private static long percentile(long[] sorted, int percent) {
+        int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static String formatMillis(long nanos) {
+        return String.format(Locale.US, "%.2f", nanos / (double) NANOS_PER_MILLI);
+    }
+}
@@ -0,0 +1,293 @@
+package com.marvinlabs.widget.progresspanel;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.os.Build;
+import android.view.Choreographer;
+import android.view.View;
+import android.view.ViewTreeObserver;
+import android.view.WindowManager;
+
+/**
+ * Picks the quality of the transitions played by the ProgressPanels from the frame times measured on the device.
+ *
+ * Each time a panel with adaptive transitions changes state, the frames rendered during the transition are sampled. When
+ * too many of them exceed the frame budget, the quality is lowered one level (from full cross-fades to a single short
+ * fade, then to no animation at all). The quality is raised one level again only after several transitions in a row
+ * rendered smoothly, which avoids flip-flopping between two levels.
+ *
+ * The measured quality can be overridden for all panels using {@link #setQualityOverride(Quality)}. The instance is
+ * shared by all the panels and must only be used from the UI thread.
+ *
+ * @author Vincent Mimoun-Prat @ MarvinLabs (www.marvinlabs.com)
+ * @see ProgressPanel#setAdaptiveTransitionsEnabled(boolean)
+ */
+public class AdaptiveTransitions {
+
+    /**
+     * Quality levels of the transitions between the panel states, from the most to the least expensive.
+     */
+    public static enum Quality {
+        /** Cross-fade between the previous and the new state */
+        FULL,
+        /** Short fade-in of the new state only */
+        REDUCED,
+        /** No animation */
+        NONE
+    }
+
+    private static final int SAMPLE_CAPACITY = 60;
+    private static final int MIN_SAMPLES = 6;
+    private static final long MIN_MONITORING_DURATION_MS = 250;
+    private static final long MAX_FRAME_INTERVAL_NS = 250000000L;
+    private static final float JANK_FRAME_FACTOR = 1.5f;
+    private static final float DOWNGRADE_JANK_RATIO = 0.25f;
+    private static final float UPGRADE_JANK_RATIO = 0.05f;
+    private static final int UPGRADE_SMOOTH_WINDOWS = 3;
+    private static final float DEFAULT_REFRESH_RATE = 60f;
+
+    private static AdaptiveTransitions sInstance;
+
+    private final long[] mFrameIntervals = new long[SAMPLE_CAPACITY];
+    private int mSampleCount;
+    private long mLastFrameTimeNanos;
+    private long mMonitoringEndNanos;
+    private boolean mMonitoring;
+    private boolean mContinuousSampling;
+    private int mSession;
+    private long mFrameBudgetNanos;
+    private int mSmoothWindows;
+    private Quality mMeasuredQuality = Quality.FULL;
+    private Quality mQualityOverride;
+    private ChoreographerSampler mChoreographerSampler;
+
+    /**
+     * Return the instance shared by all the panels.
+     *
+     * @return the shared instance
+     */
+    public static AdaptiveTransitions getInstance() {
+        if (sInstance == null) {
+            sInstance = new AdaptiveTransitions();
+        }
+        return sInstance;
+    }
+
+    private AdaptiveTransitions() {
+    }
+
+    /**
+     * Return the quality the transitions should use: the override if one is set, the measured quality otherwise.
+     *
+     * @return the transition quality
+     */
+    public Quality getQuality() {
+        return mQualityOverride != null ? mQualityOverride : mMeasuredQuality;
+    }
+
+    /**
+     * Return the quality deduced from the frame times measured so far.
+     *
+     * @return the measured transition quality
+     */
+    public Quality getMeasuredQuality() {
+        return mMeasuredQuality;
+    }
+
+    /**
+     * Force the quality of the transitions, whatever the measured frame times.
+     *
+     * @param quality The quality to use, or null to go back to the measured quality
+     */
+    public void setQualityOverride(Quality quality) {
+        mQualityOverride = quality;
+    }
+
+    /**
+     * Return the quality set using {@link #setQualityOverride(Quality)}.
+     *
+     * @return the quality override or null if none is set
+     */
+    public Quality getQualityOverride() {
+        return mQualityOverride;
+    }
+
+    /**
+     * Forget the measured frame times and go back to full quality transitions.
+     */
+    public void reset() {
+        mMeasuredQuality = Quality.FULL;
+        mSmoothWindows = 0;
+        mSampleCount = 0;
+    }
+
+    /**
+     * Called by a panel when it starts a transition. Frames get sampled until the transition is over. Transitions
+     * that overlap extend the current monitoring window.
+     *
+     * @param view       The panel doing the transition
+     * @param durationMs The duration of the transition, 0 if not animated
+     */
+    void onTransitionStarted(View view, long durationMs) {
+        if (mFrameBudgetNanos == 0) {
+            mFrameBudgetNanos = computeFrameBudget(view.getContext());
+        }
+
+        long now = System.nanoTime();
+        long endNanos = now + Math.max(durationMs, MIN_MONITORING_DURATION_MS) * 1000000L;
+
+        // A sampler relying on draw passes may never get called back if nothing got drawn, do not wait for it forever
+        if (mMonitoring && now < mMonitoringEndNanos + MAX_FRAME_INTERVAL_NS) {
+            mMonitoringEndNanos = Math.max(mMonitoringEndNanos, endNanos);
+            return;
+        }
+
+        mMonitoring = true;
+        ++mSession;
+        mMonitoringEndNanos = endNanos;
+        mLastFrameTimeNanos = 0;
+        mSampleCount = 0;
+
+        mContinuousSampling = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN;
+        if (mContinuousSampling) {
+            if (mChoreographerSampler == null) {
+                mChoreographerSampler = new ChoreographerSampler();
+            }
+            mChoreographerSampler.start(mSession);
+        } else {
+            new PreDrawSampler(view, mSession).start();
+        }
+    }
+
+    /**
+     * Record the time of a new frame.
+     *
+     * @param session The monitoring session the sampler was started for
+     * @return true if frames should still be sampled, false once the monitoring window is over
+     */
+    private boolean onFrame(int session, long frameTimeNanos) {
+        if (!mMonitoring || session != mSession) {
+            return false;
+        }
+
+        if (mLastFrameTimeNanos != 0) {
+            long interval = frameTimeNanos - mLastFrameTimeNanos;
+
+            // Vsync callbacks are requested for every frame, so a long gap there is a stall of the UI thread. Draw
+            // passes only happen when something changes: a long gap between them means nothing was being drawn.
+            if (interval > 0 && (mContinuousSampling || interval < MAX_FRAME_INTERVAL_NS)) {
+                mFrameIntervals[mSampleCount % SAMPLE_CAPACITY] = interval;
+                ++mSampleCount;
+            }
+        }
+        mLastFrameTimeNanos = frameTimeNanos;
+
+        if (frameTimeNanos < mMonitoringEndNanos) {
+            return true;
+        }
+
+        mMonitoring = false;
+        evaluate();
+        return false;
+    }
+
+    /**
+     * Move the measured quality one level up or down according to the frames sampled in the last window.
+     */
+    private void evaluate() {
+        int count = Math.min(mSampleCount, SAMPLE_CAPACITY);
+        if (count < MIN_SAMPLES) {
+            return;
+        }
+
+        long jankThreshold = (long) (mFrameBudgetNanos * JANK_FRAME_FACTOR);
+        int jankCount = 0;
+        for (int i = 0; i < count; ++i) {
+            if (mFrameIntervals[i] > jankThreshold) {
+                ++jankCount;
+            }
+        }
+        float jankRatio = jankCount / (float) count;
+
+        if (jankRatio > DOWNGRADE_JANK_RATIO) {
+            mSmoothWindows = 0;
+            if (mMeasuredQuality == Quality.FULL) {
+                mMeasuredQuality = Quality.REDUCED;
+            } else {
+                mMeasuredQuality = Quality.NONE;
+            }
+        } else if (jankRatio < UPGRADE_JANK_RATIO) {
+            ++mSmoothWindows;
+            if (mSmoothWindows >= UPGRADE_SMOOTH_WINDOWS) {
+                mSmoothWindows = 0;
+                if (mMeasuredQuality == Quality.NONE) {
+                    mMeasuredQuality = Quality.REDUCED;
+                } else {
+                    mMeasuredQuality = Quality.FULL;
+                }
+            }
+        } else {
+            mSmoothWindows = 0;
+        }
+    }
+
+    private static long computeFrameBudget(Context context) {
+        float refreshRate = DEFAULT_REFRESH_RATE;
+        WindowManager wm = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+        if (wm != null && wm.getDefaultDisplay() != null && wm.getDefaultDisplay().getRefreshRate() > 0) {
+            refreshRate = wm.getDefaultDisplay().getRefreshRate();
+        }
+        return (long) (1000000000L / refreshRate);
+    }
+
+    /**
+     * Samples the frames using vsync callbacks, available starting with Jelly Bean.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private class ChoreographerSampler implements Choreographer.FrameCallback {
+
+        private int mSamplerSession;
+
+        void start(int session) {
+            mSamplerSession = session;
+            Choreographer.getInstance().removeFrameCallback(this);
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (onFrame(mSamplerSession, frameTimeNanos)) {
+                Choreographer.getInstance().postFrameCallback(this);
+            }
+        }
+    }
+
+    /**
+     * Samples the frames by listening to the draw passes of the panel view tree, for older platforms.
+     */
+    private class PreDrawSampler implements ViewTreeObserver.OnPreDrawListener {
+
+        private final View mView;
+        private final int mSamplerSession;
+
+        PreDrawSampler(View view, int session) {
+            mView = view;
+            mSamplerSession = session;
+        }
+
+        void start() {
+            mView.getViewTreeObserver().addOnPreDrawListener(this);
+        }
+
+        @Override
+        public boolean onPreDraw() {
+            if (!onFrame(mSamplerSession, System.nanoTime())) {
+                ViewTreeObserver observer = mView.getViewTreeObserver();
+                if (observer.isAlive()) {
+                    observer.removeOnPreDrawListener(this);
+                }
+            }
+            return true;
+        }
+    }
+}
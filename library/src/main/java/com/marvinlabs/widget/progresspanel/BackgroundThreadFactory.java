@@ -0,0 +1,32 @@
+package com.marvinlabs.widget.progresspanel;
+
+import android.os.Process;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates named threads running at background priority, so that loads do not compete with the UI thread.
+ *
+ * @author Vincent Mimoun-Prat @ MarvinLabs (www.marvinlabs.com)
+ */
+class BackgroundThreadFactory implements ThreadFactory {
+
+    private final String mName;
+    private final AtomicInteger mCount = new AtomicInteger(1);
+
+    BackgroundThreadFactory(String name) {
+        mName = name;
+    }
+
+    @Override
+    public Thread newThread(final Runnable runnable) {
+        return new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }
+        }, mName + " #" + mCount.getAndIncrement());
+    }
+}
@@ -0,0 +1,207 @@
+package com.marvinlabs.widget.progresspanel;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A {@link ResultCache} serializing the results to files in a directory. The total size of the files is bounded, the
+ * least recently used results are deleted first when the limit is exceeded.
+ *
+ * This cache only does blocking I/O, hence {@link #peek(String)} always returns null. It is meant to be used as the
+ * second level of a {@link LruResultCache}.
+ *
+ * @param <T> The type of the cached results
+ * @author Vincent Mimoun-Prat @ MarvinLabs (www.marvinlabs.com)
+ */
+public class DiskResultCache<T extends Serializable> implements ResultCache<T> {
+
+    private static final String TAG = "DiskResultCache";
+    private static final String FILE_EXTENSION = ".cache";
+    private static final String TMP_FILE_EXTENSION = ".tmp";
+
+    private final File mDirectory;
+    private final long mMaxBytes;
+
+    /**
+     * Create a disk cache.
+     *
+     * @param directory The directory to store the files in, for instance a sub-directory of {@link
+     *                  android.content.Context#getCacheDir()}. It is created if needed and should not be used for
+     *                  anything else.
+     * @param maxBytes  The maximum total size of the files. Must be positive.
+     */
+    public DiskResultCache(File directory, long maxBytes) {
+        if (directory == null) {
+            throw new IllegalArgumentException("Cache directory can't be null");
+        }
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Maximum cache size must be positive");
+        }
+
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+    }
+
+    @Override
+    public T peek(String key) {
+        return null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized T get(String key) {
+        File file = getFile(key);
+        if (!file.exists()) {
+            return null;
+        }
+
+        ObjectInputStream in = null;
+        try {
+            in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+            // Different keys may end up with the same file name, check we have the right one
+            if (!key.equals(in.readObject())) {
+                return null;
+            }
+            T value = (T) in.readObject();
+
+            file.setLastModified(System.currentTimeMillis());
+            return value;
+        } catch (Exception e) {
+            Log.w(TAG, "Cannot read cached result, discarding it", e);
+            file.delete();
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    @Override
+    public synchronized void put(String key, T value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Cached value can't be null");
+        }
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            Log.w(TAG, "Cannot create cache directory " + mDirectory);
+            return;
+        }
+
+        File file = getFile(key);
+        File tmpFile = new File(mDirectory, file.getName() + TMP_FILE_EXTENSION);
+
+        ObjectOutputStream out = null;
+        try {
+            out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            out.writeObject(key);
+            out.writeObject(value);
+            out.close();
+            out = null;
+
+            if (!tmpFile.renameTo(file)) {
+                throw new IOException("Cannot rename " + tmpFile + " to " + file);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot write result to cache", e);
+            tmpFile.delete();
+            return;
+        } finally {
+            closeQuietly(out);
+        }
+
+        trimToSize();
+    }
+
+    @Override
+    public synchronized void remove(String key) {
+        getFile(key).delete();
+    }
+
+    @Override
+    public synchronized void clear() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            file.delete();
+        }
+    }
+
+    /**
+     * Delete the least recently used files until the total size fits the limit.
+     */
+    private void trimToSize() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        long totalBytes = 0;
+        for (File file : files) {
+            totalBytes += file.length();
+        }
+        if (totalBytes <= mMaxBytes) {
+            return;
+        }
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long l = lhs.lastModified();
+                long r = rhs.lastModified();
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < files.length && totalBytes > mMaxBytes; ++i) {
+            long length = files[i].length();
+            if (files[i].delete()) {
+                totalBytes -= length;
+            }
+        }
+    }
+
+    private File getFile(String key) {
+        return new File(mDirectory, hashKey(key) + FILE_EXTENSION);
+    }
+
+    private static String hashKey(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            byte[] hash = digest.digest(key.getBytes("UTF-8"));
+            StringBuilder sb = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+                sb.append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(key.hashCode());
+        } catch (IOException e) {
+            return Integer.toHexString(key.hashCode());
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
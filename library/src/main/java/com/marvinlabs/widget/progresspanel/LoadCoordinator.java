@@ -0,0 +1,271 @@
+package com.marvinlabs.widget.progresspanel;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Shares the loads of several ProgressPanels showing the same data.
+ *
+ * Panels subscribe to a data key with {@link #subscribe(String, DataLoader, ProgressPanel, Subscriber)}. Only one
+ * background load runs at a time for a given key: panels subscribing while that load is in flight simply join it. When
+ * the load completes, the result is handed to all the subscribed panels in a single pass on the UI thread and the key
+ * is released, the next subscription starts a fresh load.
+ *
+ * All the public methods must be called from the UI thread.
+ *
+ * @author Vincent Mimoun-Prat @ MarvinLabs (www.marvinlabs.com)
+ */
+public class LoadCoordinator {
+
+    private static final int DEFAULT_MAX_CONCURRENT_LOADS = 2;
+
+    private final Handler mHandler;
+    private final ExecutorService mExecutor;
+    private final Map<String, Flight<?>> mFlights = new HashMap<String, Flight<?>>();
+
+    /**
+     * Create a coordinator which runs at most two loads at the same time.
+     */
+    public LoadCoordinator() {
+        this(DEFAULT_MAX_CONCURRENT_LOADS);
+    }
+
+    /**
+     * Create a coordinator.
+     *
+     * @param maxConcurrentLoads The maximum number of loads that can run at the same time. Must be positive.
+     */
+    public LoadCoordinator(int maxConcurrentLoads) {
+        if (maxConcurrentLoads <= 0) {
+            throw new IllegalArgumentException("Maximum number of concurrent loads must be positive");
+        }
+
+        mHandler = new Handler(Looper.getMainLooper());
+        mExecutor = Executors.newFixedThreadPool(maxConcurrentLoads, new BackgroundThreadFactory("LoadCoordinator"));
+    }
+
+    /**
+     * Subscribe a panel to the data identified by a key. The panel is switched to its progress state. If a load is
+     * already in flight for that key, the panel joins it and the given loader is not used. Otherwise a load is started
+     * using the given loader. Any previous subscription of the panel to another key is cancelled. A panel which is
+     * already subscribed to that key keeps waiting for the same load, only its subscriber is replaced.
+     *
+     * @param key        The key identifying the data. Value can't be null.
+     * @param loader     The loader to use if no load is in flight for that key. Value can't be null.
+     * @param panel      The panel showing the data. Value can't be null.
+     * @param subscriber The callback binding the data to the panel. Value can't be null.
+     * @see #unsubscribe(ProgressPanel)
+     */
+    @SuppressWarnings("unchecked")
+    public <T> void subscribe(String key, DataLoader<T> loader, ProgressPanel panel, Subscriber<T> subscriber) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key can't be null");
+        }
+        if (loader == null) {
+            throw new IllegalArgumentException("Loader can't be null");
+        }
+        if (panel == null) {
+            throw new IllegalArgumentException("Panel can't be null");
+        }
+        if (subscriber == null) {
+            throw new IllegalArgumentException("Subscriber can't be null");
+        }
+
+        // Subscribers of the same key are expected to agree on the type of the data
+        Flight<T> flight = (Flight<T>) mFlights.get(key);
+        Subscription<T> subscription = flight != null ? flight.findSubscription(panel) : null;
+        if (subscription != null) {
+            subscription.mSubscriber = subscriber;
+            panel.setContentShown(false);
+            return;
+        }
+
+        unsubscribe(panel);
+
+        if (flight == null) {
+            flight = new Flight<T>(key, loader);
+            mFlights.put(key, flight);
+            flight.mFuture = mExecutor.submit(flight);
+        }
+        flight.mSubscriptions.add(new Subscription<T>(panel, subscriber));
+
+        panel.setContentShown(false);
+    }
+
+    /**
+     * Cancel the subscription of a panel, if any. When a load has no subscribers left, it gets cancelled.
+     *
+     * @param panel The panel to unsubscribe
+     */
+    public void unsubscribe(ProgressPanel panel) {
+        Iterator<Flight<?>> it = mFlights.values().iterator();
+        while (it.hasNext()) {
+            Flight<?> flight = it.next();
+            if (flight.removeSubscription(panel) && flight.mSubscriptions.isEmpty()) {
+                it.remove();
+                flight.mFuture.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Tell whether a load is in flight for a key.
+     *
+     * @param key The key identifying the data
+     * @return true if panels are waiting for the data of that key
+     */
+    public boolean isLoading(String key) {
+        return mFlights.containsKey(key);
+    }
+
+    /**
+     * Cancel all the loads and release the background threads. The coordinator cannot be used anymore after this
+     * call.
+     */
+    public void shutdown() {
+        for (Flight<?> flight : mFlights.values()) {
+            flight.mFuture.cancel(true);
+        }
+        mFlights.clear();
+        mExecutor.shutdownNow();
+    }
+
+    private <T> void onFlightFinished(Flight<T> flight, T result, Exception error) {
+        if (mFlights.get(flight.mKey) != flight) {
+            // Cancelled in the meantime
+            return;
+        }
+        mFlights.remove(flight.mKey);
+
+        for (Subscription<T> subscription : flight.mSubscriptions) {
+            if (error == null) {
+                subscription.mSubscriber.onLoadFinished(subscription.mPanel, result);
+            } else {
+                subscription.mSubscriber.onLoadFailed(subscription.mPanel, error);
+            }
+            subscription.mPanel.setContentShown(true);
+        }
+    }
+
+    /**
+     * Loads the data for a key.
+     *
+     * @param <T> The type of the loaded data
+     */
+    public static interface DataLoader<T> {
+
+        /**
+         * Load the data. Called on a background thread.
+         *
+         * @param key The key identifying the data
+         * @return the loaded data
+         * @throws Exception if the data could not be loaded
+         */
+        public T load(String key) throws Exception;
+    }
+
+    /**
+     * Binds the data to a subscribed panel.
+     *
+     * @param <T> The type of the loaded data
+     */
+    public static interface Subscriber<T> {
+
+        /**
+         * Bind the loaded data to the panel. Called on the UI thread, the panel is switched to its content state right
+         * after this call.
+         *
+         * @param panel  The subscribed panel
+         * @param result The loaded data, shared with the other subscribers
+         */
+        public void onLoadFinished(ProgressPanel panel, T result);
+
+        /**
+         * Called on the UI thread when the load failed. The panel is switched to its content state right after this
+         * call.
+         *
+         * @param panel The subscribed panel
+         * @param error The exception thrown while loading
+         */
+        public void onLoadFailed(ProgressPanel panel, Exception error);
+    }
+
+    private static class Subscription<T> {
+
+        final ProgressPanel mPanel;
+        Subscriber<T> mSubscriber;
+
+        Subscription(ProgressPanel panel, Subscriber<T> subscriber) {
+            mPanel = panel;
+            mSubscriber = subscriber;
+        }
+    }
+
+    /**
+     * A load in flight for a key, with the panels waiting for it.
+     */
+    private class Flight<T> implements Runnable {
+
+        final String mKey;
+        final DataLoader<T> mLoader;
+        final List<Subscription<T>> mSubscriptions = new ArrayList<Subscription<T>>();
+        Future<?> mFuture;
+
+        Flight(String key, DataLoader<T> loader) {
+            mKey = key;
+            mLoader = loader;
+        }
+
+        Subscription<T> findSubscription(ProgressPanel panel) {
+            for (Subscription<T> subscription : mSubscriptions) {
+                if (subscription.mPanel == panel) {
+                    return subscription;
+                }
+            }
+            return null;
+        }
+
+        boolean removeSubscription(ProgressPanel panel) {
+            for (int i = mSubscriptions.size() - 1; i >= 0; --i) {
+                if (mSubscriptions.get(i).mPanel == panel) {
+                    mSubscriptions.remove(i);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void run() {
+            T result = null;
+            Exception error = null;
+            try {
+                result = mLoader.load(mKey);
+            } catch (Exception e) {
+                error = e;
+            }
+
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+
+            final T finalResult = result;
+            final Exception finalError = error;
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onFlightFinished(Flight.this, finalResult, finalError);
+                }
+            });
+        }
+    }
+}
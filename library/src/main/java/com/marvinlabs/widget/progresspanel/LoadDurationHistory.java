@@ -0,0 +1,185 @@
+package com.marvinlabs.widget.progresspanel;
+
+import android.content.SharedPreferences;
+import android.text.TextUtils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the durations of the recent loads, per caller-supplied key, to predict how long the next load will take.
+ *
+ * For each key, the last durations are stored in a fixed-size ring buffer: once a key is known, recording a duration
+ * or predicting the next one does not allocate anything. The number of keys is bounded as well, the least recently
+ * used keys are forgotten first. The history can optionally be persisted to some SharedPreferences.
+ *
+ * This class is thread-safe.
+ *
+ * @author Vincent Mimoun-Prat @ MarvinLabs (www.marvinlabs.com)
+ * @see ProgressPanel#startLoading(String)
+ */
+public class LoadDurationHistory {
+
+    private static final int DEFAULT_CAPACITY = 8;
+    private static final int DEFAULT_MAX_KEYS = 64;
+    private static final String SEPARATOR = ",";
+
+    private final int mCapacity;
+    private final Map<String, Ring> mRings;
+    private final long[] mScratch;
+
+    /**
+     * Create a history keeping the last 8 durations of at most 64 keys.
+     */
+    public LoadDurationHistory() {
+        this(DEFAULT_CAPACITY, DEFAULT_MAX_KEYS);
+    }
+
+    /**
+     * Create a history.
+     *
+     * @param capacity The number of durations kept per key. Must be positive.
+     * @param maxKeys  The maximum number of keys. Must be positive.
+     */
+    public LoadDurationHistory(int capacity, final int maxKeys) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        if (maxKeys <= 0) {
+            throw new IllegalArgumentException("Maximum number of keys must be positive");
+        }
+
+        mCapacity = capacity;
+        mScratch = new long[capacity];
+        mRings = new LinkedHashMap<String, Ring>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Ring> eldest) {
+                return size() > maxKeys;
+            }
+        };
+    }
+
+    /**
+     * Record the duration of a load.
+     *
+     * @param key        The key identifying the kind of load
+     * @param durationMs The duration of the load in milliseconds
+     */
+    public synchronized void record(String key, long durationMs) {
+        if (durationMs < 0) {
+            return;
+        }
+
+        Ring ring = mRings.get(key);
+        if (ring == null) {
+            ring = new Ring(mCapacity);
+            mRings.put(key, ring);
+        }
+        ring.add(durationMs);
+    }
+
+    /**
+     * Predict the duration of the next load, as the median of the recorded durations.
+     *
+     * @param key The key identifying the kind of load
+     * @return the predicted duration in milliseconds, or -1 if no duration has been recorded for that key
+     */
+    public synchronized long predict(String key) {
+        Ring ring = mRings.get(key);
+        if (ring == null || ring.mCount == 0) {
+            return -1;
+        }
+
+        // Insertion sort in the pre-allocated scratch buffer, there are only a few samples
+        int count = ring.mCount;
+        for (int i = 0; i < count; ++i) {
+            long value = ring.mSamples[i];
+            int j = i - 1;
+            while (j >= 0 && mScratch[j] > value) {
+                mScratch[j + 1] = mScratch[j];
+                --j;
+            }
+            mScratch[j + 1] = value;
+        }
+        return mScratch[count / 2];
+    }
+
+    /**
+     * Forget all the recorded durations.
+     */
+    public synchronized void clear() {
+        mRings.clear();
+    }
+
+    /**
+     * Replace the recorded durations with the ones saved in some preferences. This does blocking I/O the first time
+     * the preferences are accessed.
+     *
+     * @param prefs Preferences previously passed to {@link #save(android.content.SharedPreferences)}
+     */
+    public synchronized void load(SharedPreferences prefs) {
+        mRings.clear();
+        for (Map.Entry<String, ?> entry : prefs.getAll().entrySet()) {
+            if (!(entry.getValue() instanceof String)) {
+                continue;
+            }
+
+            Ring ring = new Ring(mCapacity);
+            for (String sample : TextUtils.split((String) entry.getValue(), SEPARATOR)) {
+                try {
+                    ring.add(Long.parseLong(sample));
+                } catch (NumberFormatException ignored) {
+                }
+            }
+            if (ring.mCount > 0) {
+                mRings.put(entry.getKey(), ring);
+            }
+        }
+    }
+
+    /**
+     * Save the recorded durations to some preferences. The preferences should be dedicated to this history, their
+     * previous content is replaced. This does blocking I/O.
+     *
+     * @param prefs The preferences to write to
+     */
+    public synchronized void save(SharedPreferences prefs) {
+        SharedPreferences.Editor editor = prefs.edit();
+        editor.clear();
+        for (Map.Entry<String, Ring> entry : mRings.entrySet()) {
+            Ring ring = entry.getValue();
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < ring.mCount; ++i) {
+                if (i > 0) {
+                    sb.append(SEPARATOR);
+                }
+                // Oldest first, so that loading them back keeps the ring order
+                sb.append(ring.mSamples[(ring.mNext - ring.mCount + i + ring.mSamples.length) % ring.mSamples.length]);
+            }
+            editor.putString(entry.getKey(), sb.toString());
+        }
+        editor.commit();
+    }
+
+    /**
+     * Fixed-size ring buffer of durations.
+     */
+    private static class Ring {
+
+        final long[] mSamples;
+        int mCount;
+        int mNext;
+
+        Ring(int capacity) {
+            mSamples = new long[capacity];
+        }
+
+        void add(long value) {
+            mSamples[mNext] = value;
+            mNext = (mNext + 1) % mSamples.length;
+            if (mCount < mSamples.length) {
+                ++mCount;
+            }
+        }
+    }
+}
@@ -0,0 +1,392 @@
+package com.marvinlabs.widget.progresspanel;
+
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.ViewTreeObserver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Schedules the load tasks of several ProgressPanels so that the panels visible on screen get loaded first.
+ *
+ * Panels register their task with {@link #schedule(ProgressPanel, LoadTask)}. Pending tasks are ranked by the visible
+ * area of their panel and run on a bounded pool of background threads. Tasks for panels that are currently off screen
+ * are deferred until the panel gets scrolled into view, and tasks for panels that got detached from their window are
+ * cancelled. Priorities are re-evaluated whenever one of the panels is scrolled or laid out.
+ *
+ * All the public methods must be called from the UI thread.
+ *
+ * @author Vincent Mimoun-Prat @ MarvinLabs (www.marvinlabs.com)
+ */
+public class LoadScheduler {
+
+    private static final int DEFAULT_MAX_CONCURRENT_LOADS = 2;
+
+    private final Handler mHandler;
+    private final ExecutorService mExecutor;
+    private final int mMaxConcurrentLoads;
+    private final List<Entry<?>> mPendingEntries = new ArrayList<Entry<?>>();
+    private final List<Entry<?>> mRunningEntries = new ArrayList<Entry<?>>();
+    private final Rect mVisibleRect = new Rect();
+    private long mNextSequence;
+    private boolean mDispatchPosted;
+
+    private final Runnable mDispatchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mDispatchPosted = false;
+            dispatch();
+        }
+    };
+
+    /**
+     * Create a scheduler which runs at most two load tasks at the same time.
+     */
+    public LoadScheduler() {
+        this(DEFAULT_MAX_CONCURRENT_LOADS);
+    }
+
+    /**
+     * Create a scheduler.
+     *
+     * @param maxConcurrentLoads The maximum number of load tasks that can run at the same time. Must be positive.
+     */
+    public LoadScheduler(int maxConcurrentLoads) {
+        if (maxConcurrentLoads <= 0) {
+            throw new IllegalArgumentException("Maximum number of concurrent loads must be positive");
+        }
+
+        mMaxConcurrentLoads = maxConcurrentLoads;
+        mHandler = new Handler(Looper.getMainLooper());
+        mExecutor = Executors.newFixedThreadPool(maxConcurrentLoads, new BackgroundThreadFactory("LoadScheduler"));
+    }
+
+    /**
+     * Register the load task of a panel. The panel is switched to its progress state and the task will run as soon as
+     * the panel is visible and a thread is available. Any task previously scheduled for that panel is cancelled.
+     *
+     * @param panel The panel the task loads the content for. Value can't be null.
+     * @param task  The task to run. Value can't be null.
+     * @see #cancel(ProgressPanel)
+     */
+    public <T> void schedule(ProgressPanel panel, LoadTask<T> task) {
+        if (panel == null) {
+            throw new IllegalArgumentException("Panel can't be null");
+        }
+        if (task == null) {
+            throw new IllegalArgumentException("Load task can't be null");
+        }
+
+        cancel(panel);
+
+        Entry<T> entry = new Entry<T>(panel, task, mNextSequence++);
+        entry.addTreeListeners();
+        mPendingEntries.add(entry);
+
+        panel.setContentShown(false);
+        dispatch();
+    }
+
+    /**
+     * Cancel the task registered for the given panel, if any. A task that is already running gets interrupted and its
+     * result will not be delivered.
+     *
+     * @param panel The panel to cancel the task for
+     */
+    public void cancel(ProgressPanel panel) {
+        for (int i = mPendingEntries.size() - 1; i >= 0; --i) {
+            Entry<?> entry = mPendingEntries.get(i);
+            if (entry.mPanel == panel) {
+                mPendingEntries.remove(i);
+                entry.cancel();
+            }
+        }
+        for (int i = mRunningEntries.size() - 1; i >= 0; --i) {
+            Entry<?> entry = mRunningEntries.get(i);
+            if (entry.mPanel == panel) {
+                mRunningEntries.remove(i);
+                entry.cancel();
+            }
+        }
+    }
+
+    /**
+     * Cancel all the tasks registered with this scheduler.
+     */
+    public void cancelAll() {
+        for (Entry<?> entry : mPendingEntries) {
+            entry.cancel();
+        }
+        for (Entry<?> entry : mRunningEntries) {
+            entry.cancel();
+        }
+        mPendingEntries.clear();
+        mRunningEntries.clear();
+    }
+
+    /**
+     * Cancel all the tasks and release the background threads. The scheduler cannot be used anymore after this call.
+     */
+    public void shutdown() {
+        cancelAll();
+        mHandler.removeCallbacks(mDispatchRunnable);
+        mExecutor.shutdownNow();
+    }
+
+    /**
+     * Re-evaluate the priority of the pending tasks. Scrolling and layout changes of the registered panels are
+     * detected automatically, you only need to call this when the visibility of the panels changes in some other way
+     * (for instance when a custom view moves them around using a transformation).
+     */
+    public void reprioritize() {
+        dispatch();
+    }
+
+    /**
+     * Coalesce the dispatch requests coming from the view tree listeners, they can fire several times per frame.
+     */
+    private void postDispatch() {
+        if (mDispatchPosted) {
+            return;
+        }
+        mDispatchPosted = true;
+        mHandler.post(mDispatchRunnable);
+    }
+
+    /**
+     * Drop the tasks of detached panels and start the most visible pending tasks while there are threads available.
+     */
+    private void dispatch() {
+        for (int i = mPendingEntries.size() - 1; i >= 0; --i) {
+            Entry<?> entry = mPendingEntries.get(i);
+            if (entry.isDetached()) {
+                mPendingEntries.remove(i);
+                entry.cancel();
+            } else {
+                entry.updateTreeObserver();
+            }
+        }
+        for (int i = mRunningEntries.size() - 1; i >= 0; --i) {
+            Entry<?> entry = mRunningEntries.get(i);
+            if (entry.isDetached()) {
+                mRunningEntries.remove(i);
+                entry.cancel();
+            } else {
+                entry.updateTreeObserver();
+            }
+        }
+
+        while (mRunningEntries.size() < mMaxConcurrentLoads) {
+            Entry<?> best = null;
+            int bestArea = 0;
+            for (Entry<?> entry : mPendingEntries) {
+                int area = getVisibleArea(entry.mPanel);
+                if (area > bestArea || (area == bestArea && best != null && entry.mSequence < best.mSequence)) {
+                    best = entry;
+                    bestArea = area;
+                }
+            }
+
+            // Everything left is off screen, wait for a scroll to bring some panel into view
+            if (best == null) {
+                return;
+            }
+
+            mPendingEntries.remove(best);
+            mRunningEntries.add(best);
+            best.start();
+        }
+    }
+
+    /**
+     * Compute the area of the panel that is currently visible on screen.
+     *
+     * @return the visible area in pixels, 0 if the panel is not visible at all
+     */
+    private int getVisibleArea(ProgressPanel panel) {
+        if (panel.getWindowToken() == null || !panel.isShown()) {
+            return 0;
+        }
+        if (!panel.getGlobalVisibleRect(mVisibleRect)) {
+            return 0;
+        }
+        return mVisibleRect.width() * mVisibleRect.height();
+    }
+
+    private <T> void onEntryFinished(Entry<T> entry, T result, Exception error) {
+        if (!mRunningEntries.remove(entry)) {
+            // Cancelled in the meantime
+            return;
+        }
+
+        entry.removeTreeListeners();
+        if (error == null) {
+            entry.mTask.onLoadFinished(entry.mPanel, result);
+        } else {
+            entry.mTask.onLoadFailed(entry.mPanel, error);
+        }
+        entry.mPanel.setContentShown(true);
+
+        dispatch();
+    }
+
+    /**
+     * A task that loads the content of a panel.
+     *
+     * @param <T> The type of the loaded data
+     */
+    public static abstract class LoadTask<T> {
+
+        /**
+         * Load the data. Called on a background thread.
+         *
+         * @return the loaded data
+         * @throws Exception if the data could not be loaded
+         */
+        protected abstract T loadInBackground() throws Exception;
+
+        /**
+         * Bind the loaded data to the panel. Called on the UI thread, the panel is switched to its content state right
+         * after this call.
+         *
+         * @param panel  The panel the task was scheduled for
+         * @param result The data returned by {@link #loadInBackground()}
+         */
+        protected abstract void onLoadFinished(ProgressPanel panel, T result);
+
+        /**
+         * Called on the UI thread when {@link #loadInBackground()} threw an exception. The panel is switched to its
+         * content state right after this call. The default implementation does nothing.
+         *
+         * @param panel The panel the task was scheduled for
+         * @param error The exception thrown while loading
+         */
+        protected void onLoadFailed(ProgressPanel panel, Exception error) {
+        }
+    }
+
+    /**
+     * Book-keeping for a task registered with the scheduler.
+     */
+    private class Entry<T> implements Runnable, ViewTreeObserver.OnScrollChangedListener,
+            ViewTreeObserver.OnGlobalLayoutListener {
+
+        final ProgressPanel mPanel;
+        final LoadTask<T> mTask;
+        final long mSequence;
+        Future<?> mFuture;
+        boolean mWasAttached;
+        ViewTreeObserver mTreeObserver;
+
+        Entry(ProgressPanel panel, LoadTask<T> task, long sequence) {
+            mPanel = panel;
+            mTask = task;
+            mSequence = sequence;
+        }
+
+        /**
+         * A panel which has not been attached yet may simply not be on screen yet, we only consider it gone once we
+         * have seen it attached.
+         */
+        boolean isDetached() {
+            if (mPanel.getWindowToken() != null) {
+                mWasAttached = true;
+                return false;
+            }
+            return mWasAttached;
+        }
+
+        void start() {
+            mFuture = mExecutor.submit(this);
+        }
+
+        void cancel() {
+            if (mFuture != null) {
+                mFuture.cancel(true);
+            }
+            removeTreeListeners();
+        }
+
+        /**
+         * The listeners are removed from the observer they were added to: once the panel is detached, the panel
+         * returns a new floating observer which does not know about them.
+         */
+        void addTreeListeners() {
+            mTreeObserver = mPanel.getViewTreeObserver();
+            mTreeObserver.addOnScrollChangedListener(this);
+            mTreeObserver.addOnGlobalLayoutListener(this);
+        }
+
+        /**
+         * Follow the observer of the panel while it is attached. The floating observer of a panel which was not
+         * attached yet is merged into the window observer on attach, and a panel can be moved to another window.
+         */
+        @SuppressWarnings("deprecation")
+        void updateTreeObserver() {
+            if (mTreeObserver == null || mPanel.getWindowToken() == null) {
+                return;
+            }
+
+            ViewTreeObserver observer = mPanel.getViewTreeObserver();
+            if (observer != mTreeObserver) {
+                removeTreeListeners();
+
+                // The listeners of a floating observer have already been merged into this one, don't add them twice
+                observer.removeOnScrollChangedListener(this);
+                observer.removeGlobalOnLayoutListener(this);
+                addTreeListeners();
+            }
+        }
+
+        @SuppressWarnings("deprecation")
+        void removeTreeListeners() {
+            if (mTreeObserver == null) {
+                return;
+            }
+            if (mTreeObserver.isAlive()) {
+                mTreeObserver.removeOnScrollChangedListener(this);
+                mTreeObserver.removeGlobalOnLayoutListener(this);
+            }
+            mTreeObserver = null;
+        }
+
+        @Override
+        public void run() {
+            T result = null;
+            Exception error = null;
+            try {
+                result = mTask.loadInBackground();
+            } catch (Exception e) {
+                error = e;
+            }
+
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+
+            final T finalResult = result;
+            final Exception finalError = error;
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onEntryFinished(Entry.this, finalResult, finalError);
+                }
+            });
+        }
+
+        @Override
+        public void onScrollChanged() {
+            postDispatch();
+        }
+
+        @Override
+        public void onGlobalLayout() {
+            postDispatch();
+        }
+    }
+}
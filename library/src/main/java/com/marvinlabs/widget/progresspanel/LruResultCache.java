@@ -0,0 +1,103 @@
+package com.marvinlabs.widget.progresspanel;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A {@link ResultCache} keeping the most recently used results in memory. It can be backed by a second, slower, cache
+ * level (typically a {@link DiskResultCache}) which gets written through and is consulted when a result is not in
+ * memory.
+ *
+ * @param <T> The type of the cached results
+ * @author Vincent Mimoun-Prat @ MarvinLabs (www.marvinlabs.com)
+ */
+public class LruResultCache<T> implements ResultCache<T> {
+
+    private final Map<String, T> mEntries;
+    private final ResultCache<T> mSecondLevel;
+
+    /**
+     * Create a memory-only cache.
+     *
+     * @param maxEntries The maximum number of results kept in memory. Must be positive.
+     */
+    public LruResultCache(int maxEntries) {
+        this(maxEntries, null);
+    }
+
+    /**
+     * Create a memory cache backed by a second cache level.
+     *
+     * @param maxEntries  The maximum number of results kept in memory. Must be positive.
+     * @param secondLevel The cache consulted on memory misses, or null
+     */
+    public LruResultCache(final int maxEntries, ResultCache<T> secondLevel) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Maximum number of entries must be positive");
+        }
+
+        mSecondLevel = secondLevel;
+        mEntries = new LinkedHashMap<String, T>(maxEntries, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, T> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    @Override
+    public synchronized T peek(String key) {
+        return mEntries.get(key);
+    }
+
+    @Override
+    public T get(String key) {
+        T value = peek(key);
+        if (value != null || mSecondLevel == null) {
+            return value;
+        }
+
+        // Not holding the lock while reading from the second level, it may be slow
+        value = mSecondLevel.get(key);
+        if (value != null) {
+            synchronized (this) {
+                mEntries.put(key, value);
+            }
+        }
+        return value;
+    }
+
+    @Override
+    public void put(String key, T value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Cached value can't be null");
+        }
+
+        synchronized (this) {
+            mEntries.put(key, value);
+        }
+        if (mSecondLevel != null) {
+            mSecondLevel.put(key, value);
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+        synchronized (this) {
+            mEntries.remove(key);
+        }
+        if (mSecondLevel != null) {
+            mSecondLevel.remove(key);
+        }
+    }
+
+    @Override
+    public void clear() {
+        synchronized (this) {
+            mEntries.clear();
+        }
+        if (mSecondLevel != null) {
+            mSecondLevel.clear();
+        }
+    }
+}
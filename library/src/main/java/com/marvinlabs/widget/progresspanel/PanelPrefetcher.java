@@ -0,0 +1,283 @@
+package com.marvinlabs.widget.progresspanel;
+
+import android.content.Context;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.view.View;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Prepares the ProgressPanels of upcoming pages (typically the pages adjacent to the current one in a ViewPager) while
+ * the UI thread is idle, so that swiping to them shows their content right away instead of a progress indicator.
+ *
+ * Prefetched panels are inflated one at a time when the UI thread message queue becomes idle, their load is started
+ * and they are kept aside, measured and laid out at the parking size, until the page adapter claims them with {@link
+ * #take(int)}. The parking size must be set with {@link #setParkingSize(int, int)} before prefetching. The number of
+ * prefetched panels is capped, prefetching more pages than that cancels the oldest prefetch.
+ *
+ * The idle handler only stays registered while there is work left. A parked panel has no parent, so its layout
+ * requests go unnoticed: call {@link #onLoadFinished(int)} when the content of a prefetched panel changes so that it
+ * gets laid out again while the UI thread is idle.
+ *
+ * All the methods must be called from the UI thread.
+ *
+ * @author Vincent Mimoun-Prat @ MarvinLabs (www.marvinlabs.com)
+ */
+public class PanelPrefetcher {
+
+    private static final int DEFAULT_MAX_PREFETCHED = 2;
+
+    private final Context mContext;
+    private final PanelFactory mFactory;
+    private final int mMaxPrefetched;
+    private final Map<Integer, Entry> mEntries = new LinkedHashMap<Integer, Entry>();
+    private int mParkingWidth;
+    private int mParkingHeight;
+    private boolean mIdleHandlerRegistered;
+
+    private final MessageQueue.IdleHandler mIdleHandler = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            prefetchNext();
+
+            mIdleHandlerRegistered = hasPendingWork();
+            return mIdleHandlerRegistered;
+        }
+    };
+
+    /**
+     * Create a prefetcher which keeps at most two prefetched panels.
+     *
+     * @param context The context used to create the panels
+     * @param factory The factory creating the panels and starting their load
+     */
+    public PanelPrefetcher(Context context, PanelFactory factory) {
+        this(context, factory, DEFAULT_MAX_PREFETCHED);
+    }
+
+    /**
+     * Create a prefetcher.
+     *
+     * @param context       The context used to create the panels
+     * @param factory       The factory creating the panels and starting their load
+     * @param maxPrefetched The maximum number of panels prefetched at the same time. Must be positive.
+     */
+    public PanelPrefetcher(Context context, PanelFactory factory, int maxPrefetched) {
+        if (factory == null) {
+            throw new IllegalArgumentException("Panel factory can't be null");
+        }
+        if (maxPrefetched <= 0) {
+            throw new IllegalArgumentException("Maximum number of prefetched panels must be positive");
+        }
+
+        mContext = context;
+        mFactory = factory;
+        mMaxPrefetched = maxPrefetched;
+    }
+
+    /**
+     * Set the size at which the prefetched panels get laid out while parked. This should be the size of a page, a
+     * panel parked at the right size will not need another layout pass when it is shown. Must be called before
+     * {@link #prefetch(int)}.
+     *
+     * @param width  The width in pixels
+     * @param height The height in pixels
+     */
+    public void setParkingSize(int width, int height) {
+        mParkingWidth = width;
+        mParkingHeight = height;
+
+        for (Entry entry : mEntries.values()) {
+            if (entry.mPanel != null) {
+                layoutPanel(entry.mPanel);
+            }
+        }
+    }
+
+    /**
+     * Signal that the content of a prefetched panel changed, typically because its load completed. The panel gets
+     * laid out again at the parking size the next time the UI thread is idle. Does nothing if that page is not
+     * prefetched.
+     *
+     * @param position The position of the page
+     */
+    public void onLoadFinished(int position) {
+        if (mEntries.containsKey(position)) {
+            registerIdleHandler();
+        }
+    }
+
+    /**
+     * Request the panel for a given page to be prefetched. Does nothing if that page is already being prefetched. If
+     * the maximum number of prefetched panels is reached, the oldest prefetch gets cancelled.
+     *
+     * @param position The position of the page
+     * @throws IllegalStateException if the parking size has not been set
+     */
+    public void prefetch(int position) {
+        if (mParkingWidth <= 0 || mParkingHeight <= 0) {
+            throw new IllegalStateException("Parking size must be set before prefetching");
+        }
+        if (mEntries.containsKey(position)) {
+            return;
+        }
+
+        if (mEntries.size() >= mMaxPrefetched) {
+            Iterator<Entry> it = mEntries.values().iterator();
+            Entry eldest = it.next();
+            it.remove();
+            cancelEntry(eldest);
+        }
+
+        mEntries.put(position, new Entry(position));
+        registerIdleHandler();
+    }
+
+    /**
+     * Claim the prefetched panel for a given page. The panel is not tracked by the prefetcher anymore and has no
+     * parent, it can be added to the page directly.
+     *
+     * @param position The position of the page
+     * @return the prefetched panel or null if that page was not prefetched or its panel has not been created yet
+     */
+    public ProgressPanel take(int position) {
+        Entry entry = mEntries.remove(position);
+        if (entry == null) {
+            return null;
+        }
+
+        if (entry.mPanel == null) {
+            // Not inflated yet, the caller will create the page normally
+            return null;
+        }
+
+        // Content changed without onLoadFinished() being called, or before the UI thread got idle
+        if (entry.mPanel.isLayoutRequested()) {
+            layoutPanel(entry.mPanel);
+        }
+        return entry.mPanel;
+    }
+
+    /**
+     * Cancel the prefetch of a page. The load of its panel is cancelled if it was started.
+     *
+     * @param position The position of the page
+     */
+    public void cancel(int position) {
+        Entry entry = mEntries.remove(position);
+        if (entry != null) {
+            cancelEntry(entry);
+        }
+    }
+
+    /**
+     * Cancel all the prefetches.
+     */
+    public void cancelAll() {
+        for (Entry entry : mEntries.values()) {
+            cancelEntry(entry);
+        }
+        mEntries.clear();
+
+        if (mIdleHandlerRegistered) {
+            mIdleHandlerRegistered = false;
+            Looper.myQueue().removeIdleHandler(mIdleHandler);
+        }
+    }
+
+    /**
+     * Do one slice of work: create the next pending panel or, if all of them exist, lay out again the parked panels
+     * whose content changed since they were parked (typically because their load finished).
+     */
+    private void prefetchNext() {
+        for (Entry entry : mEntries.values()) {
+            if (entry.mPanel == null) {
+                entry.mPanel = mFactory.createPanel(mContext, entry.mPosition);
+                layoutPanel(entry.mPanel);
+                mFactory.startLoad(entry.mPanel, entry.mPosition);
+                return;
+            }
+        }
+
+        for (Entry entry : mEntries.values()) {
+            if (entry.mPanel.isLayoutRequested()) {
+                layoutPanel(entry.mPanel);
+            }
+        }
+    }
+
+    private boolean hasPendingWork() {
+        for (Entry entry : mEntries.values()) {
+            if (entry.mPanel == null || entry.mPanel.isLayoutRequested()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void registerIdleHandler() {
+        if (!mIdleHandlerRegistered) {
+            mIdleHandlerRegistered = true;
+            Looper.myQueue().addIdleHandler(mIdleHandler);
+        }
+    }
+
+    private void layoutPanel(ProgressPanel panel) {
+        panel.measure(View.MeasureSpec.makeMeasureSpec(mParkingWidth, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(mParkingHeight, View.MeasureSpec.EXACTLY));
+        panel.layout(0, 0, mParkingWidth, mParkingHeight);
+    }
+
+    private void cancelEntry(Entry entry) {
+        if (entry.mPanel != null) {
+            mFactory.cancelLoad(entry.mPanel, entry.mPosition);
+        }
+    }
+
+    /**
+     * Creates the panels of the pages and drives their load.
+     */
+    public static interface PanelFactory {
+
+        /**
+         * Create the panel for a page. Called on the UI thread while it is idle.
+         *
+         * @param context  The context of the prefetcher
+         * @param position The position of the page
+         * @return the panel, without parent
+         */
+        public ProgressPanel createPanel(Context context, int position);
+
+        /**
+         * Start loading the content of a prefetched panel. When the load completes, the panel should be switched to
+         * its content state using {@link ProgressPanel#setContentShownNoAnimation(boolean)} so that no transition
+         * is played when the page appears, then {@link PanelPrefetcher#onLoadFinished(int)} should be called so
+         * that the panel gets laid out again.
+         *
+         * @param panel    The panel returned by {@link #createPanel(android.content.Context, int)}
+         * @param position The position of the page
+         */
+        public void startLoad(ProgressPanel panel, int position);
+
+        /**
+         * Cancel the load of a prefetched panel which will not be used.
+         *
+         * @param panel    The panel returned by {@link #createPanel(android.content.Context, int)}
+         * @param position The position of the page
+         */
+        public void cancelLoad(ProgressPanel panel, int position);
+    }
+
+    private static class Entry {
+
+        final int mPosition;
+        ProgressPanel mPanel;
+
+        Entry(int position) {
+            mPosition = position;
+        }
+    }
+}
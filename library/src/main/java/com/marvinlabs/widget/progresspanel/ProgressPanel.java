@@ -1,16 +1,35 @@
 package com.marvinlabs.widget.progresspanel;
 
 import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.os.SystemClock;
+import android.support.v4.view.ViewCompat;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
 import android.util.AttributeSet;
+import android.util.TypedValue;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.animation.AlphaAnimation;
+import android.view.animation.Animation;
 import android.view.animation.AnimationUtils;
+import android.widget.FrameLayout;
+import android.widget.ProgressBar;
 import android.widget.RelativeLayout;
 import android.widget.TextView;
 
 import com.marvinlabs.widget.progresspanel.R;
 
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * A panel that can either show a progress indicator, a no-data indicator or some content. This is derived from the
  * ListFragment.
@@ -22,10 +41,30 @@ import com.marvinlabs.widget.progresspanel.R;
  * programmatically or specified as children of the ProgressPanel within an XML layout (with the respective ids
  * "@id/empty_view" and "@id/progress_view").
  *
+ * In lightweight rendering mode (XML attribute "lightweightRendering"), the default progress indicator and no-data
+ * message are not views: the panel draws them itself. Custom views set for these states are still supported.
+ *
+ * When given a {@link LoadDurationHistory}, the panel can predict how long a load will take (see {@link
+ * #startLoading(String)}): short loads skip the progress state altogether and longer ones show a determinate progress
+ * driven by the estimated remaining time.
+ *
+ * Content views inflated from a layout resource are kept in a small cache when they get replaced, so that switching back
+ * to that layout reuses the view instead of inflating it again (see {@link #setContentViewCacheSize(int)}).
+ *
  * @author Vincent Mimoun-Prat @ MarvinLabs (www.marvinlabs.com)
  */
 public class ProgressPanel extends RelativeLayout {
 
+    private static final int DEFAULT_CONTENT_VIEW_CACHE_SIZE = 3;
+    private static final int SPINNER_SIZE_DP = 48;
+    private static final int SPINNER_STROKE_DP = 4;
+    private static final int SPINNER_SWEEP_ANGLE = 270;
+    private static final int SPINNER_REVOLUTION_MS = 1000;
+    private static final long DEFAULT_PROGRESS_SKIP_THRESHOLD_MS = 300;
+    private static final long ESTIMATE_UPDATE_INTERVAL_MS = 50;
+    private static final long ESTIMATE_TEXT_UPDATE_INTERVAL_MS = 500;
+    private static final int ESTIMATE_PROGRESS_MAX = 1000;
+
     private ViewGroup mEmptyContainer;
     private ViewGroup mProgressContainer;
     private ViewGroup mContentContainer;
@@ -34,13 +73,53 @@ public class ProgressPanel extends RelativeLayout {
     private View mEmptyView;
     private boolean mContentShown;
     private boolean mIsContentEmpty;
+    private boolean mProgressShown;
+    private boolean mLightweightRendering;
+    private CharSequence mEmptyText;
+    private TextPaint mEmptyTextPaint;
+    private StaticLayout mEmptyTextLayout;
+    private Paint mSpinnerPaint;
+    private final RectF mSpinnerBounds = new RectF();
+    private LoadDurationHistory mLoadDurationHistory;
+    private long mProgressSkipThresholdMs = DEFAULT_PROGRESS_SKIP_THRESHOLD_MS;
+    private String mLoadKey;
+    private long mLoadStartTime;
+    private long mPredictedDuration;
+    private boolean mProgressSkipped;
+    private float mEstimatedProgress = -1;
+    private ProgressBar mEstimateProgressBar;
+    private TextView mEstimateTextView;
+    private int mEstimateTextSeconds;
+
+    private final Runnable mEstimateUpdater = new Runnable() {
+        @Override
+        public void run() {
+            updateEstimatedProgress();
+        }
+    };
+    private boolean mAdaptiveTransitionsEnabled;
+    private int mContentLayoutResId;
+    private int mContentViewCacheSize = DEFAULT_CONTENT_VIEW_CACHE_SIZE;
+    private ContentViewCacheListener mContentViewCacheListener;
+    private final LinkedHashMap<Integer, View> mContentViewCache = new LinkedHashMap<Integer, View>(4, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, View> eldest) {
+            if (size() <= mContentViewCacheSize) {
+                return false;
+            }
+            onContentViewEvicted(eldest.getKey(), eldest.getValue());
+            return true;
+        }
+    };
 
     public ProgressPanel(Context context, AttributeSet attrs, int defStyle) {
         super(context, attrs, defStyle);
+        readAttributes(context, attrs, defStyle);
     }
 
     public ProgressPanel(Context context, AttributeSet attrs) {
         super(context, attrs);
+        readAttributes(context, attrs, 0);
     }
 
     public ProgressPanel(Context context) {
@@ -58,11 +137,15 @@ public class ProgressPanel extends RelativeLayout {
 
         // Clear our current hierarchy and replace with the default panel structure
         removeAllViews();
-        LayoutInflater.from(getContext()).inflate(R.layout.widget_progresspanel, this, true);
+        LayoutInflater.from(getContext()).inflate(mLightweightRendering ? R.layout.widget_progresspanel_lightweight
+                : R.layout.widget_progresspanel, this, true);
 
         // Now replace default views with user views if any
         if (userContentView != null) {
             setContentView(userContentView);
+
+            // Content given in the layout is shown right away, like before any state change
+            setContentShown(true, false);
         } else if (findViewById(R.id.content_view) != null) {
             setContentView(findViewById(R.id.content_view));
         }
@@ -80,6 +163,22 @@ public class ProgressPanel extends RelativeLayout {
         }
     }
 
+    private void readAttributes(Context context, AttributeSet attrs, int defStyle) {
+        TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.ProgressPanel, defStyle, 0);
+        mLightweightRendering = a.getBoolean(R.styleable.ProgressPanel_lightweightRendering, false);
+        a.recycle();
+    }
+
+    /**
+     * Returns true if the panel draws the default progress indicator and no-data message itself instead of using
+     * views. This is set using the XML attribute "lightweightRendering".
+     *
+     * @return true if the lightweight rendering mode is used
+     */
+    public boolean isLightweightRendering() {
+        return mLightweightRendering;
+    }
+
     /**
      * Return content view or null if the content view has not been initialized.
      *
@@ -100,6 +199,16 @@ public class ProgressPanel extends RelativeLayout {
      * @see #getContentView()
      */
     public void setContentView(View view) {
+        setContentView(view, 0);
+    }
+
+    /**
+     * Set the content view and remember the layout it was inflated from, so that it can be cached when replaced.
+     *
+     * @param view        The desired content to display. Value can't be null.
+     * @param layoutResId Resource ID the view was inflated from, 0 if the view was not inflated by the panel
+     */
+    private void setContentView(View view, int layoutResId) {
         ensureContent();
         if (view == null) {
             throw new IllegalArgumentException("Content view can't be null");
@@ -115,23 +224,91 @@ public class ProgressPanel extends RelativeLayout {
             int index = mContentContainer.indexOfChild(mContentView);
             // replace content view
             mContentContainer.removeView(mContentView);
+            if (mContentView != view) {
+                cacheContentView(mContentLayoutResId, mContentView);
+            }
             mContentContainer.addView(view, index, new LayoutParams(LayoutParams.MATCH_PARENT,
                     LayoutParams.MATCH_PARENT));
         }
         mContentView = view;
+        mContentLayoutResId = layoutResId;
     }
 
     /**
-     * Set the content content from a layout resource.
+     * Set the content content from a layout resource. If a content view previously inflated from that layout is
+     * available in the content view cache, it is reused instead of inflating a new one.
      *
      * @param layoutResId Resource ID to be inflated.
      * @see #setContentView(android.view.View)
      * @see #getContentView()
+     * @see #setContentViewCacheSize(int)
      */
     public void setContentView(int layoutResId) {
-        LayoutInflater layoutInflater = LayoutInflater.from(getContext());
-        View contentView = layoutInflater.inflate(layoutResId, null);
-        setContentView(contentView);
+        View contentView = mContentViewCache.remove(layoutResId);
+        if (contentView != null) {
+            if (mContentViewCacheListener != null) {
+                mContentViewCacheListener.onContentViewReused(layoutResId, contentView);
+            }
+        } else {
+            LayoutInflater layoutInflater = LayoutInflater.from(getContext());
+            contentView = layoutInflater.inflate(layoutResId, null);
+        }
+        setContentView(contentView, layoutResId);
+    }
+
+    /**
+     * Return the maximum number of detached content views kept for reuse by {@link #setContentView(int)}.
+     *
+     * @return the size of the content view cache
+     * @see #setContentViewCacheSize(int)
+     */
+    public int getContentViewCacheSize() {
+        return mContentViewCacheSize;
+    }
+
+    /**
+     * Set the maximum number of detached content views kept for reuse by {@link #setContentView(int)}. Only one view is
+     * kept per layout resource, the least recently used views are evicted first. The default size is 3, use 0 to
+     * disable the cache.
+     *
+     * @param size The size of the cache. Value can't be negative.
+     * @see #clearContentViewCache()
+     */
+    public void setContentViewCacheSize(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Content view cache size can't be negative");
+        }
+
+        mContentViewCacheSize = size;
+        Iterator<Map.Entry<Integer, View>> it = mContentViewCache.entrySet().iterator();
+        while (mContentViewCache.size() > size && it.hasNext()) {
+            Map.Entry<Integer, View> eldest = it.next();
+            it.remove();
+            onContentViewEvicted(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    /**
+     * Evict all the views from the content view cache.
+     *
+     * @see #setContentViewCacheSize(int)
+     */
+    public void clearContentViewCache() {
+        Iterator<Map.Entry<Integer, View>> it = mContentViewCache.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, View> eldest = it.next();
+            it.remove();
+            onContentViewEvicted(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    /**
+     * Set a listener to be notified when a cached content view gets reused or evicted.
+     *
+     * @param listener The listener, or null to remove the current one
+     */
+    public void setContentViewCacheListener(ContentViewCacheListener listener) {
+        mContentViewCacheListener = listener;
     }
 
     /**
@@ -158,6 +335,11 @@ public class ProgressPanel extends RelativeLayout {
         ensureContent();
         if (mEmptyView != null && mEmptyView instanceof TextView) {
             ((TextView) mEmptyView).setText(text);
+        } else if (mEmptyContainer == null) {
+            // Drawn by the panel
+            mEmptyText = text;
+            mEmptyTextLayout = null;
+            invalidate();
         } else {
             throw new IllegalStateException("Can't be used with a custom content view");
         }
@@ -188,6 +370,11 @@ public class ProgressPanel extends RelativeLayout {
             ((ViewGroup) view.getParent()).removeView(view);
         }
 
+        if (mEmptyContainer == null) {
+            mEmptyContainer = createStateContainer(R.id.empty_container, !mProgressShown && mIsContentEmpty);
+            invalidate();
+        }
+
         if (mEmptyView == null) {
             mEmptyContainer.addView(view);
         } else {
@@ -215,12 +402,18 @@ public class ProgressPanel extends RelativeLayout {
             ((ViewGroup) view.getParent()).removeView(view);
         }
 
+        if (mProgressContainer == null) {
+            mProgressContainer = createStateContainer(R.id.progress_container, mProgressShown);
+            invalidate();
+        }
+
         if (mProgressContainer.getChildCount() == 0) {
             mProgressContainer.addView(view);
         } else {
             mProgressContainer.removeAllViews();
             mProgressContainer.addView(view);
         }
+        mProgressView = view;
     }
 
     /**
@@ -244,6 +437,219 @@ public class ProgressPanel extends RelativeLayout {
         setContentShown(shown, false);
     }
 
+    /**
+     * Return the history used to predict the duration of the loads.
+     *
+     * @return the history or null if none is set
+     * @see #setLoadDurationHistory(LoadDurationHistory)
+     */
+    public LoadDurationHistory getLoadDurationHistory() {
+        return mLoadDurationHistory;
+    }
+
+    /**
+     * Set the history used to predict the duration of the loads started with {@link #startLoading(String)}. The same
+     * history can be shared by several panels.
+     *
+     * @param history The history, or null to always show an indeterminate progress indicator
+     */
+    public void setLoadDurationHistory(LoadDurationHistory history) {
+        mLoadDurationHistory = history;
+    }
+
+    /**
+     * Set the predicted duration under which {@link #startLoading(String)} does not show the progress indicator at all.
+     * Defaults to 300 milliseconds.
+     *
+     * @param thresholdMs The threshold in milliseconds, 0 to always show the progress indicator
+     */
+    public void setProgressSkipThreshold(long thresholdMs) {
+        mProgressSkipThresholdMs = thresholdMs;
+    }
+
+    /**
+     * Signal that a load starts. If the loads with that key usually complete under the skip threshold, the panel keeps
+     * its current state. Otherwise the progress indicator is shown and, if the durations of previous loads are known,
+     * it shows a determinate progress estimated from them. This works when the progress view is or contains a
+     * determinate-capable ProgressBar, or when the panel draws its default progress indicator itself. The default
+     * layout also shows the estimated remaining time below its indeterminate progress indicator.
+     *
+     * @param key The key identifying the kind of load, the durations are recorded per key. Value can't be null.
+     * @see #finishLoading()
+     * @see #setLoadDurationHistory(LoadDurationHistory)
+     */
+    public void startLoading(String key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Load key can't be null");
+        }
+
+        stopEstimatedProgress();
+        mLoadKey = key;
+        mLoadStartTime = SystemClock.uptimeMillis();
+        mPredictedDuration = mLoadDurationHistory != null ? mLoadDurationHistory.predict(key) : -1;
+
+        mProgressSkipped = mPredictedDuration >= 0 && mPredictedDuration < mProgressSkipThresholdMs;
+        if (mProgressSkipped) {
+            return;
+        }
+
+        setContentShown(false);
+        if (mPredictedDuration > 0 && resolveEstimateViews()) {
+            mEstimatedProgress = 0;
+            updateEstimatedProgress();
+        }
+    }
+
+    /**
+     * Signal that the load started with {@link #startLoading(String)} is over: its duration is recorded and the content
+     * is shown.
+     */
+    public void finishLoading() {
+        if (mLoadKey == null) {
+            throw new IllegalStateException("No load has been started");
+        }
+
+        if (mLoadDurationHistory != null) {
+            mLoadDurationHistory.record(mLoadKey, SystemClock.uptimeMillis() - mLoadStartTime);
+        }
+        mLoadKey = null;
+        stopEstimatedProgress();
+
+        if (mProgressSkipped) {
+            setContentShownNoAnimation(true);
+        } else {
+            setContentShown(true);
+        }
+    }
+
+    /**
+     * Find the views able to show the estimate: a ProgressBar which is not indeterminate-only, or the text view of
+     * the default layout. When the panel draws its progress indicator itself, no view is needed.
+     *
+     * @return true if the estimate can be shown at all
+     */
+    private boolean resolveEstimateViews() {
+        mEstimateProgressBar = findProgressBar(mProgressView);
+        if (mEstimateProgressBar != null) {
+            // Indeterminate-only progress bars (the default spinner style) ignore this call
+            mEstimateProgressBar.setIndeterminate(false);
+            if (mEstimateProgressBar.isIndeterminate()) {
+                mEstimateProgressBar = null;
+            }
+        }
+
+        View textView = mProgressContainer != null ? mProgressContainer.findViewById(R.id.progress_text) : null;
+        mEstimateTextView = textView instanceof TextView ? (TextView) textView : null;
+        mEstimateTextSeconds = -1;
+
+        return mEstimateProgressBar != null || mEstimateTextView != null
+                || (mLightweightRendering && mProgressContainer == null);
+    }
+
+    /**
+     * Update the estimated progress from the elapsed time and schedule the next update. The estimate grows linearly
+     * up to 90% of the predicted duration, then slows down so that it never reaches 100% when the load is late.
+     */
+    private void updateEstimatedProgress() {
+        if (mLoadKey == null || mPredictedDuration <= 0) {
+            return;
+        }
+
+        long elapsed = SystemClock.uptimeMillis() - mLoadStartTime;
+        float ratio = elapsed / (float) mPredictedDuration;
+        mEstimatedProgress = ratio < 0.9f ? ratio : 0.99f - 0.09f * (float) Math.exp(-(ratio - 0.9f) * 10);
+
+        boolean determinate = false;
+        if (mEstimateProgressBar != null) {
+            mEstimateProgressBar.setMax(ESTIMATE_PROGRESS_MAX);
+            mEstimateProgressBar.setProgress((int) (mEstimatedProgress * ESTIMATE_PROGRESS_MAX));
+            determinate = true;
+        }
+        if (mLightweightRendering && mProgressContainer == null) {
+            invalidate();
+            determinate = true;
+        }
+        if (mEstimateTextView != null) {
+            updateEstimateText(mPredictedDuration - elapsed);
+        }
+
+        // The remaining time is shown in seconds, it does not need smooth updates
+        removeCallbacks(mEstimateUpdater);
+        postDelayed(mEstimateUpdater, determinate ? ESTIMATE_UPDATE_INTERVAL_MS : ESTIMATE_TEXT_UPDATE_INTERVAL_MS);
+    }
+
+    /**
+     * Show the remaining time, only touching the text view when the displayed value changes.
+     */
+    private void updateEstimateText(long remainingMs) {
+        int seconds = remainingMs > 0 ? (int) ((remainingMs + 999) / 1000) : 0;
+        if (seconds == mEstimateTextSeconds) {
+            return;
+        }
+
+        mEstimateTextSeconds = seconds;
+        if (seconds > 0) {
+            mEstimateTextView.setText(getResources().getQuantityString(R.plurals.progress_time_left, seconds,
+                    seconds));
+        } else {
+            mEstimateTextView.setText(R.string.progress_almost_done);
+        }
+        mEstimateTextView.setVisibility(View.VISIBLE);
+    }
+
+    /**
+     * Stop updating the estimated progress and put the progress indicator back in indeterminate mode.
+     */
+    private void stopEstimatedProgress() {
+        removeCallbacks(mEstimateUpdater);
+        if (mEstimatedProgress < 0) {
+            return;
+        }
+
+        mEstimatedProgress = -1;
+        if (mEstimateProgressBar != null) {
+            mEstimateProgressBar.setIndeterminate(true);
+            mEstimateProgressBar = null;
+        }
+        if (mEstimateTextView != null) {
+            mEstimateTextView.setVisibility(View.GONE);
+            mEstimateTextView = null;
+        }
+    }
+
+    /**
+     * Find the first ProgressBar in a view hierarchy.
+     */
+    private static ProgressBar findProgressBar(View view) {
+        if (view instanceof ProgressBar) {
+            return (ProgressBar) view;
+        }
+        if (view instanceof ViewGroup) {
+            ViewGroup group = (ViewGroup) view;
+            for (int i = 0; i < group.getChildCount(); ++i) {
+                ProgressBar progressBar = findProgressBar(group.getChildAt(i));
+                if (progressBar != null) {
+                    return progressBar;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        removeCallbacks(mEstimateUpdater);
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (mEstimatedProgress >= 0) {
+            updateEstimatedProgress();
+        }
+    }
+
     /**
      * Control whether the content is being displayed. You can make it not displayed if you are waiting for the initial
      * data to show in it. During this time an indeterminant progress indicator will be shown instead.
@@ -260,29 +666,108 @@ public class ProgressPanel extends RelativeLayout {
         View containerPicked = isContentEmpty() ? mEmptyContainer : mContentContainer;
 
         mContentShown = shown;
+        mProgressShown = !shown;
         if (shown) {
-            if (animate) {
-                mProgressContainer.startAnimation(AnimationUtils.loadAnimation(getContext(), android.R.anim.fade_out));
-                containerPicked.startAnimation(AnimationUtils.loadAnimation(getContext(), android.R.anim.fade_in));
-            } else {
-                mProgressContainer.clearAnimation();
-                containerPicked.clearAnimation();
-            }
-            mProgressContainer.setVisibility(View.GONE);
-            containerPicked.setVisibility(View.VISIBLE);
+            startTransition(containerPicked, mProgressContainer, animate);
+            setContainerVisibility(mProgressContainer, View.GONE);
+            setContainerVisibility(containerPicked, View.VISIBLE);
         } else {
-            if (animate) {
-                mProgressContainer.startAnimation(AnimationUtils.loadAnimation(getContext(), android.R.anim.fade_in));
-                containerPicked.startAnimation(AnimationUtils.loadAnimation(getContext(), android.R.anim.fade_out));
-            } else {
-                mProgressContainer.clearAnimation();
-                containerPicked.clearAnimation();
-            }
-            mProgressContainer.setVisibility(View.VISIBLE);
-            containerPicked.setVisibility(View.GONE);
+            startTransition(mProgressContainer, containerPicked, animate);
+            setContainerVisibility(mProgressContainer, View.VISIBLE);
+            setContainerVisibility(containerPicked, View.GONE);
+        }
+
+        if (mLightweightRendering) {
+            invalidate();
+        }
+    }
+
+    /**
+     * Start the animations between two containers, according to the transition quality.
+     *
+     * @param shownContainer  The container which is getting shown, null if that state is drawn by the panel
+     * @param hiddenContainer The container which is getting hidden, null if that state is drawn by the panel
+     * @param animate         If false, no animation is played whatever the transition quality
+     */
+    private void startTransition(View shownContainer, View hiddenContainer, boolean animate) {
+        AdaptiveTransitions.Quality quality = AdaptiveTransitions.Quality.NONE;
+        if (animate) {
+            quality = mAdaptiveTransitionsEnabled ? AdaptiveTransitions.getInstance().getQuality()
+                    : AdaptiveTransitions.Quality.FULL;
+        }
+
+        long duration = 0;
+        switch (quality) {
+            case FULL:
+                Animation fadeIn = AnimationUtils.loadAnimation(getContext(), android.R.anim.fade_in);
+                startAnimation(hiddenContainer, AnimationUtils.loadAnimation(getContext(), android.R.anim.fade_out));
+                startAnimation(shownContainer, fadeIn);
+                duration = fadeIn.getDuration();
+                break;
+            case REDUCED:
+                Animation shortFadeIn = new AlphaAnimation(0f, 1f);
+                shortFadeIn.setDuration(getResources().getInteger(android.R.integer.config_shortAnimTime));
+                startAnimation(hiddenContainer, null);
+                startAnimation(shownContainer, shortFadeIn);
+                duration = shortFadeIn.getDuration();
+                break;
+            default:
+                startAnimation(hiddenContainer, null);
+                startAnimation(shownContainer, null);
+                break;
+        }
+
+        if (animate && mAdaptiveTransitionsEnabled) {
+            AdaptiveTransitions.getInstance().onTransitionStarted(this, duration);
         }
     }
 
+    /**
+     * Start an animation on a container, or clear its current animation.
+     *
+     * @param container The container, may be null
+     * @param animation The animation to start, or null to clear the current one
+     */
+    private static void startAnimation(View container, Animation animation) {
+        if (container == null) {
+            return;
+        }
+
+        if (animation == null) {
+            container.clearAnimation();
+        } else {
+            container.startAnimation(animation);
+        }
+    }
+
+    private static void setContainerVisibility(View container, int visibility) {
+        if (container != null) {
+            container.setVisibility(visibility);
+        }
+    }
+
+    /**
+     * Returns true if the quality of the animated transitions adapts to the measured frame times.
+     *
+     * @return true if adaptive transitions are enabled
+     * @see #setAdaptiveTransitionsEnabled(boolean)
+     */
+    public boolean isAdaptiveTransitionsEnabled() {
+        return mAdaptiveTransitionsEnabled;
+    }
+
+    /**
+     * Make the animated transitions of this panel adapt to the frame times measured on the device. When frames get
+     * dropped during the transitions, cheaper transitions (or no transition at all) are used until the device shows
+     * enough headroom again. Disabled by default, in which case the panel always cross-fades between its states.
+     *
+     * @param enabled true to enable adaptive transitions
+     * @see AdaptiveTransitions#setQualityOverride(AdaptiveTransitions.Quality)
+     */
+    public void setAdaptiveTransitionsEnabled(boolean enabled) {
+        mAdaptiveTransitionsEnabled = enabled;
+    }
+
     /**
      * Returns true if content is empty. The default content is not empty.
      *
@@ -302,17 +787,156 @@ public class ProgressPanel extends RelativeLayout {
     public void setContentEmpty(boolean isEmpty) {
         mIsContentEmpty = isEmpty;
 
-        if (mProgressContainer.getVisibility() != View.VISIBLE) {
+        if (!mProgressShown) {
             if (isEmpty) {
                 mContentContainer.setVisibility(View.GONE);
-                mEmptyContainer.setVisibility(View.VISIBLE);
+                setContainerVisibility(mEmptyContainer, View.VISIBLE);
             } else {
                 mContentContainer.setVisibility(View.VISIBLE);
-                mEmptyContainer.setVisibility(View.GONE);
+                setContainerVisibility(mEmptyContainer, View.GONE);
+            }
+
+            if (mLightweightRendering) {
+                invalidate();
             }
         }
     }
 
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        super.dispatchDraw(canvas);
+
+        if (!mLightweightRendering) {
+            return;
+        }
+
+        if (mProgressShown) {
+            if (mProgressContainer == null) {
+                drawSpinner(canvas);
+            }
+        } else if (mIsContentEmpty && mEmptyContainer == null) {
+            drawEmptyText(canvas);
+        }
+    }
+
+    /**
+     * Draw the default progress indicator in the middle of the panel: a rotating arc, or an arc growing with the
+     * estimated progress when the load duration is predicted. Another frame gets scheduled right away while the
+     * progress state is shown.
+     */
+    private void drawSpinner(Canvas canvas) {
+        if (mSpinnerPaint == null) {
+            mSpinnerPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+            mSpinnerPaint.setStyle(Paint.Style.STROKE);
+            mSpinnerPaint.setStrokeCap(Paint.Cap.ROUND);
+            mSpinnerPaint.setStrokeWidth(dpToPx(SPINNER_STROKE_DP));
+            mSpinnerPaint.setColor(getDefaultTextPaint().getColor());
+        }
+
+        float radius = (dpToPx(SPINNER_SIZE_DP) - mSpinnerPaint.getStrokeWidth()) / 2;
+        float cx = getWidth() / 2f;
+        float cy = getHeight() / 2f;
+        mSpinnerBounds.set(cx - radius, cy - radius, cx + radius, cy + radius);
+
+        if (mEstimatedProgress >= 0) {
+            canvas.drawArc(mSpinnerBounds, -90, 360f * mEstimatedProgress, false, mSpinnerPaint);
+            return;
+        }
+
+        float startAngle = 360f * (SystemClock.uptimeMillis() % SPINNER_REVOLUTION_MS) / SPINNER_REVOLUTION_MS;
+        canvas.drawArc(mSpinnerBounds, startAngle, SPINNER_SWEEP_ANGLE, false, mSpinnerPaint);
+
+        int inset = (int) Math.ceil(mSpinnerPaint.getStrokeWidth());
+        ViewCompat.postInvalidateOnAnimation(this, (int) mSpinnerBounds.left - inset, (int) mSpinnerBounds.top - inset,
+                (int) mSpinnerBounds.right + inset, (int) mSpinnerBounds.bottom + inset);
+    }
+
+    /**
+     * Draw the default no-data message centered in the panel. The text layout is only computed again when the text or
+     * the width of the panel change.
+     */
+    private void drawEmptyText(Canvas canvas) {
+        int width = getWidth() - getPaddingLeft() - getPaddingRight();
+        if (width <= 0) {
+            return;
+        }
+
+        if (mEmptyTextLayout == null || mEmptyTextLayout.getWidth() != width) {
+            CharSequence text = mEmptyText != null ? mEmptyText : getContext().getText(R.string.no_data);
+            mEmptyTextLayout = new StaticLayout(text, getDefaultTextPaint(), width, Layout.Alignment.ALIGN_CENTER, 1f,
+                    0f, false);
+        }
+
+        int height = getHeight() - getPaddingTop() - getPaddingBottom();
+        canvas.save();
+        canvas.translate(getPaddingLeft(), getPaddingTop() + (height - mEmptyTextLayout.getHeight()) / 2f);
+        mEmptyTextLayout.draw(canvas);
+        canvas.restore();
+    }
+
+    /**
+     * Get the paint matching the default no-data TextView: the large text appearance of the current theme.
+     */
+    private TextPaint getDefaultTextPaint() {
+        if (mEmptyTextPaint != null) {
+            return mEmptyTextPaint;
+        }
+
+        mEmptyTextPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+        mEmptyTextPaint.setColor(Color.GRAY);
+        mEmptyTextPaint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, 22,
+                getResources().getDisplayMetrics()));
+
+        TypedValue value = new TypedValue();
+        if (getContext().getTheme().resolveAttribute(android.R.attr.textAppearanceLarge, value, true)) {
+            TypedArray a = getContext().obtainStyledAttributes(value.resourceId,
+                    new int[]{android.R.attr.textSize, android.R.attr.textColor});
+            mEmptyTextPaint.setTextSize(a.getDimension(0, mEmptyTextPaint.getTextSize()));
+            mEmptyTextPaint.setColor(a.getColor(1, mEmptyTextPaint.getColor()));
+            a.recycle();
+        }
+        return mEmptyTextPaint;
+    }
+
+    private float dpToPx(int dp) {
+        return TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, dp, getResources().getDisplayMetrics());
+    }
+
+    /**
+     * Create a container for a state drawn by the panel until now, because a custom view was set for that state.
+     *
+     * @param id      The id of the container
+     * @param visible Whether that state is currently shown
+     * @return the new container, already added to the panel
+     */
+    private ViewGroup createStateContainer(int id, boolean visible) {
+        FrameLayout container = new FrameLayout(getContext());
+        container.setId(id);
+        container.setVisibility(visible ? View.VISIBLE : View.GONE);
+        addView(container, 0, new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT));
+        return container;
+    }
+
+    /**
+     * Keep a content view that just got replaced so that it can be reused later on.
+     */
+    private void cacheContentView(int layoutResId, View view) {
+        if (layoutResId == 0 || mContentViewCacheSize == 0) {
+            return;
+        }
+
+        View previous = mContentViewCache.put(layoutResId, view);
+        if (previous != null && previous != view) {
+            onContentViewEvicted(layoutResId, previous);
+        }
+    }
+
+    private void onContentViewEvicted(int layoutResId, View view) {
+        if (mContentViewCacheListener != null) {
+            mContentViewCacheListener.onContentViewEvicted(layoutResId, view);
+        }
+    }
+
     protected View getContentContainer() {
         return mContentContainer;
     }
@@ -329,12 +953,14 @@ public class ProgressPanel extends RelativeLayout {
      * Initialization views.
      */
     private void ensureContent() {
-        if (mContentContainer != null && mProgressContainer != null && mEmptyContainer != null) {
+        if (mContentContainer != null && (mLightweightRendering
+                || (mProgressContainer != null && mEmptyContainer != null))) {
             return;
         }
 
+        // In lightweight mode, the progress and empty containers only exist once custom views are set for them
         mProgressContainer = (ViewGroup) findViewById(R.id.progress_container);
-        if (mProgressContainer == null) {
+        if (mProgressContainer == null && !mLightweightRendering) {
             throw new RuntimeException(
                     "Your content must have a ViewGroup whose id attribute is 'R.id.progress_container'");
         }
@@ -348,12 +974,17 @@ public class ProgressPanel extends RelativeLayout {
 
         mEmptyView = findViewById(R.id.empty_view);
         mEmptyContainer = (ViewGroup) findViewById(R.id.empty_container);
-        if (mEmptyContainer == null) {
+        if (mEmptyContainer == null && !mLightweightRendering) {
             throw new RuntimeException(
                     "Your content must have a ViewGroup whose id attribute is 'R.id.empty_container'");
         }
 
-        mEmptyContainer.setVisibility(View.GONE);
+        setContainerVisibility(mEmptyContainer, View.GONE);
+
+        // The containers as laid out show the content: make the state match them, otherwise the first call to
+        // setContentShown(false) would be ignored
+        mContentShown = true;
+        mProgressShown = false;
 
         // We are starting without a content, so assume we won't
         // have our data right away and start with the progress indicator.
@@ -361,4 +992,29 @@ public class ProgressPanel extends RelativeLayout {
             setContentShown(false, false);
         }
     }
+
+    /**
+     * Interface definition for callbacks invoked by the content view cache.
+     *
+     * @see #setContentViewCacheListener(ContentViewCacheListener)
+     */
+    public static interface ContentViewCacheListener {
+
+        /**
+         * Called when a cached content view is about to be shown again. This is the place to reset the state of the
+         * view (scroll position, selection, ...) if needed.
+         *
+         * @param layoutResId Resource ID the view was inflated from
+         * @param view        The view being reused
+         */
+        public void onContentViewReused(int layoutResId, View view);
+
+        /**
+         * Called when a content view is evicted from the cache and will not be reused anymore.
+         *
+         * @param layoutResId Resource ID the view was inflated from
+         * @param view        The evicted view
+         */
+        public void onContentViewEvicted(int layoutResId, View view);
+    }
 }
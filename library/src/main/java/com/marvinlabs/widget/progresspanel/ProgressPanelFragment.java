@@ -0,0 +1,429 @@
+package com.marvinlabs.widget.progresspanel;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.support.v4.app.Fragment;
+import android.support.v4.app.LoaderManager;
+import android.support.v4.content.AsyncTaskLoader;
+import android.support.v4.content.Loader;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * A fragment showing its content in a {@link ProgressPanel} and loading it in the background, with an optional {@link
+ * ResultCache}.
+ *
+ * Each load is identified by a key (see {@link #load(String)}). When the result for that key is in the cache, the
+ * content is shown right away without going through the progress state, and the result is then loaded again in the
+ * background to revalidate it. The fresh result replaces the cached one without any visible transition. When the
+ * result is not cached, the progress indicator is shown until it is loaded.
+ *
+ * Sub-classes provide the content view, load the result in the background and bind it to the content view.
+ *
+ * @param <T> The type of the loaded results
+ * @author Vincent Mimoun-Prat @ MarvinLabs (www.marvinlabs.com)
+ */
+public abstract class ProgressPanelFragment<T> extends Fragment implements LoaderManager.LoaderCallbacks<T> {
+
+    private static final int LOOKUP_LOADER_ID = 0x7050;
+    private static final int FETCH_LOADER_ID = 0x7051;
+    private static final String ARG_KEY = "Key";
+    private static final String ARG_REVALIDATE = "Revalidate";
+    private static final String STATE_KEY = "ProgressPanelFragment:Key";
+    private static final String STATE_LOADER_ID = "ProgressPanelFragment:LoaderId";
+
+    private ProgressPanel mProgressPanel;
+    private ResultCache<T> mResultCache;
+    private String mKey;
+    private int mLoaderId;
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        if (savedInstanceState != null) {
+            mKey = savedInstanceState.getString(STATE_KEY);
+            mLoaderId = savedInstanceState.getInt(STATE_LOADER_ID);
+        }
+    }
+
+    @Override
+    public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
+        View root = inflater.inflate(R.layout.fragment_progresspanel, container, false);
+        mProgressPanel = (ProgressPanel) root.findViewById(R.id.progress_panel);
+        mProgressPanel.setContentView(onCreateContentView(inflater, mProgressPanel, savedInstanceState));
+        return root;
+    }
+
+    @Override
+    public void onActivityCreated(Bundle savedInstanceState) {
+        super.onActivityCreated(savedInstanceState);
+
+        if (savedInstanceState != null && mKey != null) {
+            resumeLoad();
+        }
+    }
+
+    @Override
+    public void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putString(STATE_KEY, mKey);
+        outState.putInt(STATE_LOADER_ID, mLoaderId);
+    }
+
+    @Override
+    public void onDestroyView() {
+        mProgressPanel = null;
+        super.onDestroyView();
+    }
+
+    @Override
+    public void onDestroy() {
+        // Loaders are retained across configuration changes, they must not keep this instance
+        unbindLoader(LOOKUP_LOADER_ID);
+        unbindLoader(FETCH_LOADER_ID);
+        super.onDestroy();
+    }
+
+    /**
+     * Return the panel holding the content view, or null if the view of the fragment has not been created.
+     *
+     * @return the progress panel
+     */
+    public ProgressPanel getProgressPanel() {
+        return mProgressPanel;
+    }
+
+    /**
+     * Return the cache used to store the loaded results.
+     *
+     * @return the cache or null if results are not cached
+     */
+    public ResultCache<T> getResultCache() {
+        return mResultCache;
+    }
+
+    /**
+     * Set the cache used to store the loaded results. The same cache can be shared by several fragments.
+     *
+     * @param cache The cache, or null to not cache the results
+     */
+    public void setResultCache(ResultCache<T> cache) {
+        mResultCache = cache;
+    }
+
+    /**
+     * Return the key of the last load.
+     *
+     * @return the key or null if nothing has been loaded yet
+     */
+    public String getKey() {
+        return mKey;
+    }
+
+    /**
+     * Load the result for a given key and show it. Any load in progress for another key is superseded. Must be called
+     * once the view of the fragment has been created, typically from {@link #onActivityCreated(android.os.Bundle)}.
+     * When the fragment is re-created, the last load is resumed automatically: there is no need to call this again
+     * if {@link #getKey()} already returns the same key.
+     *
+     * @param key The key identifying the result to load. Value can't be null.
+     */
+    public void load(String key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key can't be null");
+        }
+
+        mKey = key;
+
+        T cached = mResultCache != null ? mResultCache.peek(key) : null;
+        if (cached != null) {
+            showResult(cached, false);
+            startLoader(FETCH_LOADER_ID, key, true);
+        } else if (mResultCache != null) {
+            // The result may be in a slower cache level, look it up in the background before showing any progress
+            startLoader(LOOKUP_LOADER_ID, key, false);
+        } else {
+            mProgressPanel.setContentShown(false);
+            startLoader(FETCH_LOADER_ID, key, false);
+        }
+    }
+
+    /**
+     * Load the result for the last key again.
+     *
+     * @see #load(String)
+     */
+    public void reload() {
+        if (mKey == null) {
+            throw new IllegalStateException("Nothing has been loaded yet");
+        }
+        load(mKey);
+    }
+
+    /**
+     * Create the view showing the result. It gets added to the progress panel.
+     *
+     * @param inflater           The inflater passed to {@link #onCreateView(LayoutInflater, ViewGroup, Bundle)}
+     * @param container          The progress panel
+     * @param savedInstanceState The state passed to {@link #onCreateView(LayoutInflater, ViewGroup, Bundle)}
+     * @return the content view
+     */
+    protected abstract View onCreateContentView(LayoutInflater inflater, ViewGroup container,
+                                                Bundle savedInstanceState);
+
+    /**
+     * Load the result for a key. Called on a background thread.
+     *
+     * @param key The key given to {@link #load(String)}
+     * @return the result, null if there is no result for that key
+     * @throws Exception if the result could not be loaded
+     */
+    protected abstract T loadResult(String key) throws Exception;
+
+    /**
+     * Show a result in the content view. Called on the UI thread.
+     *
+     * @param result The result, either loaded or taken from the cache. May be null.
+     */
+    protected abstract void onBindResult(T result);
+
+    /**
+     * Tell whether a result should be shown using the empty view of the panel. By default, only null results are
+     * considered empty.
+     *
+     * @param result The result
+     * @return true if the result is empty
+     */
+    protected boolean isResultEmpty(T result) {
+        return result == null;
+    }
+
+    /**
+     * Called on the UI thread when {@link #loadResult(String)} threw an exception. When a cached result was being
+     * revalidated, that result stays on screen. Otherwise the empty view is shown. The default implementation does
+     * nothing.
+     *
+     * @param key   The key of the failed load
+     * @param error The exception thrown while loading
+     */
+    protected void onLoadFailed(String key, Exception error) {
+    }
+
+    @Override
+    public Loader<T> onCreateLoader(int id, Bundle args) {
+        String key = args.getString(ARG_KEY);
+        ResultLoader<T> loader;
+        if (id == LOOKUP_LOADER_ID) {
+            loader = new ResultLoader<T>(getActivity(), key, true, false);
+        } else if (id == FETCH_LOADER_ID) {
+            loader = new ResultLoader<T>(getActivity(), key, false, args.getBoolean(ARG_REVALIDATE));
+        } else {
+            return null;
+        }
+        loader.bind(this);
+        return loader;
+    }
+
+    @Override
+    public void onLoadFinished(Loader<T> loader, T result) {
+        ResultLoader<T> resultLoader = (ResultLoader<T>) loader;
+        if (mProgressPanel == null || !resultLoader.mKey.equals(mKey)) {
+            // Superseded by a later load
+            return;
+        }
+
+        if (resultLoader.mLookup) {
+            if (result != null) {
+                showResult(result, false);
+                startLoader(FETCH_LOADER_ID, mKey, true);
+            } else {
+                mProgressPanel.setContentShown(false);
+                startLoader(FETCH_LOADER_ID, mKey, false);
+            }
+            return;
+        }
+
+        if (resultLoader.mError != null) {
+            onLoadFailed(mKey, resultLoader.mError);
+            if (!resultLoader.mRevalidate) {
+                mProgressPanel.setContentEmpty(true);
+                mProgressPanel.setContentShown(true);
+            }
+            return;
+        }
+
+        // When revalidating, the content is already shown: simply refresh it
+        showResult(result, !resultLoader.mRevalidate);
+    }
+
+    @Override
+    public void onLoaderReset(Loader<T> loader) {
+    }
+
+    private void startLoader(int id, String key, boolean revalidate) {
+        Bundle args = new Bundle(2);
+        args.putString(ARG_KEY, key);
+        args.putBoolean(ARG_REVALIDATE, revalidate);
+        mLoaderId = id;
+        getLoaderManager().restartLoader(id, args, this);
+    }
+
+    /**
+     * Reconnect to the loader of the last load after the fragment got re-created. When it is gone (the process has
+     * been killed in the meantime), the load starts over. The other loader is destroyed, it would otherwise keep the
+     * previous instance as its callbacks.
+     */
+    @SuppressWarnings("unchecked")
+    private void resumeLoad() {
+        LoaderManager loaderManager = getLoaderManager();
+        Loader<T> loader = mLoaderId != 0 ? loaderManager.<T>getLoader(mLoaderId) : null;
+        if (!(loader instanceof ResultLoader) || !mKey.equals(((ResultLoader<T>) loader).mKey)) {
+            loaderManager.destroyLoader(LOOKUP_LOADER_ID);
+            loaderManager.destroyLoader(FETCH_LOADER_ID);
+            load(mKey);
+            return;
+        }
+
+        loaderManager.destroyLoader(mLoaderId == LOOKUP_LOADER_ID ? FETCH_LOADER_ID : LOOKUP_LOADER_ID);
+
+        // The new panel starts in its progress state: a cached result must be shown right away, not once the loader
+        // is done looking it up or revalidating it
+        ResultLoader<T> resultLoader = (ResultLoader<T>) loader;
+        T cached = mResultCache != null ? mResultCache.peek(mKey) : null;
+        if (cached != null && (resultLoader.mLookup || resultLoader.mRevalidate)) {
+            showResult(cached, false);
+        }
+
+        resultLoader.bind(this);
+        loaderManager.initLoader(mLoaderId, null, this);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void unbindLoader(int id) {
+        Loader<T> loader = getLoaderManager().getLoader(id);
+        if (loader instanceof ResultLoader) {
+            ((ResultLoader<T>) loader).bind(null);
+        }
+    }
+
+    private void showResult(T result, boolean animate) {
+        onBindResult(result);
+        mProgressPanel.setContentEmpty(isResultEmpty(result));
+        if (animate) {
+            mProgressPanel.setContentShown(true);
+        } else {
+            mProgressPanel.setContentShownNoAnimation(true);
+        }
+    }
+
+    /**
+     * Loader either looking up the result in the cache or loading it and storing it in the cache.
+     *
+     * Loaders outlive the fragment instances across configuration changes: the loader is bound to the current
+     * instance and unbound when it gets destroyed. A load starting while no fragment is bound is run again once the
+     * new instance binds itself. That retry is decided on the UI thread, where both the binding and the delivery of
+     * the results happen.
+     */
+    private static class ResultLoader<T> extends AsyncTaskLoader<T> {
+
+        final String mKey;
+        final boolean mLookup;
+        final boolean mRevalidate;
+        private volatile ProgressPanelFragment<T> mFragment;
+        private volatile ResultCache<T> mCache;
+        private volatile boolean mLoadedWithoutFragment;
+        private boolean mWaitingForFragment;
+        private T mResult;
+        private boolean mDelivered;
+        Exception mError;
+
+        ResultLoader(Context context, String key, boolean lookup, boolean revalidate) {
+            super(context);
+            mKey = key;
+            mLookup = lookup;
+            mRevalidate = revalidate;
+        }
+
+        /**
+         * @param fragment The fragment loading the results, null when it gets destroyed
+         */
+        void bind(ProgressPanelFragment<T> fragment) {
+            mFragment = fragment;
+            if (fragment == null) {
+                return;
+            }
+
+            mCache = fragment.getResultCache();
+            if (mWaitingForFragment) {
+                mWaitingForFragment = false;
+                if (isStarted()) {
+                    forceLoad();
+                }
+            }
+        }
+
+        @Override
+        public T loadInBackground() {
+            if (mLookup) {
+                ResultCache<T> cache = mCache;
+                return cache != null ? cache.get(mKey) : null;
+            }
+
+            ProgressPanelFragment<T> fragment = mFragment;
+            mLoadedWithoutFragment = fragment == null;
+            if (fragment == null) {
+                return null;
+            }
+
+            try {
+                T result = fragment.loadResult(mKey);
+                ResultCache<T> cache = mCache;
+                if (cache != null) {
+                    if (result != null) {
+                        cache.put(mKey, result);
+                    } else {
+                        cache.remove(mKey);
+                    }
+                }
+                return result;
+            } catch (Exception e) {
+                mError = e;
+                return null;
+            }
+        }
+
+        @Override
+        public void deliverResult(T result) {
+            if (mLoadedWithoutFragment) {
+                // Nothing has been loaded: run the load again now if a fragment got bound meanwhile, on bind otherwise
+                mLoadedWithoutFragment = false;
+                if (mFragment != null && isStarted()) {
+                    forceLoad();
+                } else {
+                    mWaitingForFragment = true;
+                }
+                return;
+            }
+
+            mResult = result;
+            mDelivered = true;
+            super.deliverResult(result);
+        }
+
+        @Override
+        protected void onStartLoading() {
+            if (mDelivered) {
+                deliverResult(mResult);
+            } else {
+                forceLoad();
+            }
+        }
+
+        @Override
+        protected void onStopLoading() {
+            cancelLoad();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.marvinlabs.widget.progresspanel;
+
+/**
+ * A cache for the results loaded by a {@link ProgressPanelFragment}, keyed per request.
+ *
+ * Implementations must be thread-safe: {@link #peek(String)} is called from the UI thread while the other methods are
+ * called from the background thread of the loaders.
+ *
+ * @param <T> The type of the cached results
+ * @author Vincent Mimoun-Prat @ MarvinLabs (www.marvinlabs.com)
+ */
+public interface ResultCache<T> {
+
+    /**
+     * Return the result cached for a key if it is available without any blocking I/O.
+     *
+     * @param key The key of the request
+     * @return the cached result or null if there is none or it cannot be obtained quickly
+     */
+    public T peek(String key);
+
+    /**
+     * Return the result cached for a key. May block while reading from slow storage.
+     *
+     * @param key The key of the request
+     * @return the cached result or null if there is none
+     */
+    public T get(String key);
+
+    /**
+     * Store the result of a request.
+     *
+     * @param key   The key of the request
+     * @param value The result. Value can't be null.
+     */
+    public void put(String key, T value);
+
+    /**
+     * Remove the result cached for a key, if any.
+     *
+     * @param key The key of the request
+     */
+    public void remove(String key);
+
+    /**
+     * Remove all the cached results.
+     */
+    public void clear();
+}